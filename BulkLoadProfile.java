@@ -0,0 +1,92 @@
+package org.example;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
+
+/**
+ * IndexWriter settings for loading a large batch of reviews in one go.
+ * Compared with the defaults it buffers far more documents in RAM before flushing,
+ * lets several merges run at once, writes plain (non compound) segment files while
+ * loading, and can force-merge the result down to a few segments at the end.
+ */
+public class BulkLoadProfile {
+
+    private double ramBufferMB = 1024;
+    private int mergeThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private int maxMergeCount = mergeThreads + 5;
+    private int forceMergeSegments = 0;
+
+    /**
+     * Creates the profile with its default settings: a 1 GB RAM buffer, up to four merge
+     * threads depending on the cores available, no compound files and no final force merge.
+     */
+    public BulkLoadProfile() {
+    }
+
+    /**
+     * Applies the profile to an IndexWriterConfig.
+     *
+     * @param iwc the configuration of the writer used for the bulk load.
+     */
+    public void apply(IndexWriterConfig iwc) {
+        iwc.setRAMBufferSizeMB(ramBufferMB);
+        iwc.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+
+        ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+        mergeScheduler.setMaxMergesAndThreads(maxMergeCount, mergeThreads);
+        iwc.setMergeScheduler(mergeScheduler);
+
+        // compound files save file handles at search time but cost an extra copy of every segment
+        iwc.setUseCompoundFile(false);
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        mergePolicy.setNoCFSRatio(0.0);
+        iwc.setMergePolicy(mergePolicy);
+    }
+
+    /**
+     * @param ramBufferMB megabytes of indexed documents buffered before a segment is flushed.
+     * @return this instance.
+     */
+    public BulkLoadProfile setRamBufferMB(double ramBufferMB) {
+        this.ramBufferMB = ramBufferMB;
+        return this;
+    }
+
+    /**
+     * @param mergeThreads merges running at the same time.
+     * @param maxMergeCount merges allowed to queue up before indexing threads are stalled.
+     * @return this instance.
+     */
+    public BulkLoadProfile setMergeThreads(int mergeThreads, int maxMergeCount) {
+        if (mergeThreads < 1 || maxMergeCount < mergeThreads) {
+            throw new IllegalArgumentException("Need at least one merge thread and maxMergeCount >= mergeThreads");
+        }
+        this.mergeThreads = mergeThreads;
+        this.maxMergeCount = maxMergeCount;
+        return this;
+    }
+
+    /**
+     * @param forceMergeSegments segment count to force-merge to at the end of the load, 0 to skip.
+     * @return this instance.
+     */
+    public BulkLoadProfile setForceMergeSegments(int forceMergeSegments) {
+        this.forceMergeSegments = forceMergeSegments;
+        return this;
+    }
+
+    public double getRamBufferMB() {return ramBufferMB;}
+
+    public int getMergeThreads() {return mergeThreads;}
+
+    public int getMaxMergeCount() {return maxMergeCount;}
+
+    public int getForceMergeSegments() {return forceMergeSegments;}
+
+    @Override
+    public String toString() {
+        return "bulk load (ram buffer " + ramBufferMB + " MB, " + mergeThreads + " merge threads"
+                + (forceMergeSegments > 0 ? ", force merge to " + forceMergeSegments + " segments)" : ")");
+    }
+}
@@ -0,0 +1,154 @@
+package org.example;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.automaton.Automata;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.Operations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Query parser for indexes without the catch-all field. Every "everything:" clause is
+ * rewritten at query time into a disjunction over the fields the catch-all field used to
+ * copy, each analyzed the way that field is indexed. Other clauses are parsed as usual.
+ * The keyword fields asin and reviewerID are matched ignoring case, as the lowercased
+ * catch-all field matched them.
+ */
+public class CatchAllQueryParser extends QueryParser {
+
+    // the sources indexed with the KeywordAnalyzer, see Indexer#createAnalyzer
+    private static final Set<String> KEYWORD_SOURCES = Set.of("asin", "reviewerID");
+
+    /**
+     * Creates the parser.
+     *
+     * @param defaultField the field searched by clauses without a field name; may be the catch-all field.
+     * @param analyzer the analyzer for the query text, normally the per-field analyzer of the Indexer.
+     */
+    public CatchAllQueryParser(String defaultField, Analyzer analyzer) {
+        super(defaultField, analyzer);
+    }
+
+    /**
+     * Creates the query of a text without query syntax searched in the catch-all field,
+     * expanded as the text of an "everything:" clause.
+     *
+     * @param text the text, e.g. a word or a rating.
+     * @return the expanded query, or null if the text leaves no term in any field.
+     * @throws ParseException if the text cannot be analyzed.
+     */
+    public Query catchAllQuery(String text) throws ParseException {
+        return getFieldQuery(IndexSchema.CATCH_ALL_FIELD, text, false);
+    }
+
+    @Override
+    protected Query getFieldQuery(String field, String queryText, boolean quoted) throws ParseException {
+        if (!isCatchAll(field)) {
+            return super.getFieldQuery(field, queryText, quoted);
+        }
+        return expand(source -> source.equals("overall") ? overallQuery(queryText)
+                : KEYWORD_SOURCES.contains(source) ? keywordQuery(source, queryText)
+                : super.getFieldQuery(source, queryText, quoted));
+    }
+
+    @Override
+    protected Query getFieldQuery(String field, String queryText, int slop) throws ParseException {
+        if (!isCatchAll(field)) {
+            return super.getFieldQuery(field, queryText, slop);
+        }
+        return expand(source -> source.equals("overall") ? overallQuery(queryText)
+                : KEYWORD_SOURCES.contains(source) ? keywordQuery(source, queryText)
+                : super.getFieldQuery(source, queryText, slop));
+    }
+
+    @Override
+    protected Query getPrefixQuery(String field, String termStr) throws ParseException {
+        return isCatchAll(field) ? expandText(source -> super.getPrefixQuery(source, termStr))
+                : super.getPrefixQuery(field, termStr);
+    }
+
+    @Override
+    protected Query getWildcardQuery(String field, String termStr) throws ParseException {
+        return isCatchAll(field) ? expandText(source -> super.getWildcardQuery(source, termStr))
+                : super.getWildcardQuery(field, termStr);
+    }
+
+    @Override
+    protected Query getFuzzyQuery(String field, String termStr, float minSimilarity) throws ParseException {
+        return isCatchAll(field) ? expandText(source -> super.getFuzzyQuery(source, termStr, minSimilarity))
+                : super.getFuzzyQuery(field, termStr, minSimilarity);
+    }
+
+    @Override
+    protected Query getRegexpQuery(String field, String termStr) throws ParseException {
+        return isCatchAll(field) ? expandText(source -> super.getRegexpQuery(source, termStr))
+                : super.getRegexpQuery(field, termStr);
+    }
+
+    @Override
+    protected Query getRangeQuery(String field, String part1, String part2, boolean startInclusive, boolean endInclusive) throws ParseException {
+        return isCatchAll(field) ? expandText(source -> super.getRangeQuery(source, part1, part2, startInclusive, endInclusive))
+                : super.getRangeQuery(field, part1, part2, startInclusive, endInclusive);
+    }
+
+    // the value is indexed whole and as written, so the text matches it ignoring case
+    private static Query keywordQuery(String field, String queryText) {
+        String text = queryText.trim();
+        if (text.isEmpty()) {
+            return null;
+        }
+        List<Automaton> chars = new ArrayList<>();
+        text.codePoints().forEach(c -> {
+            int lower = Character.toLowerCase(c);
+            int upper = Character.toUpperCase(c);
+            chars.add(lower == upper ? Automata.makeChar(c) : Operations.union(Automata.makeChar(lower), Automata.makeChar(upper)));
+        });
+        return new AutomatonQuery(new Term(field, text), Operations.concatenate(chars));
+    }
+
+    private static boolean isCatchAll(String field) {
+        return IndexSchema.CATCH_ALL_FIELD.equals(field);
+    }
+
+    // the rating is only indexed as a point, so the catch-all text "4.0" becomes an exact point query
+    private static Query overallQuery(String queryText) {
+        try {
+            return DoublePoint.newExactQuery("overall", Double.parseDouble(queryText.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // term-level queries skip overall, which has no terms
+    private Query expandText(SourceQuery sourceQuery) throws ParseException {
+        return expand(source -> source.equals("overall") ? null : sourceQuery.create(source));
+    }
+
+    private Query expand(SourceQuery sourceQuery) throws ParseException {
+        BooleanQuery.Builder expanded = new BooleanQuery.Builder();
+        int clauses = 0;
+        for (String source : IndexSchema.CATCH_ALL_SOURCES) {
+            Query query = sourceQuery.create(source);
+            if (query != null) {
+                expanded.add(query, BooleanClause.Occur.SHOULD);
+                clauses++;
+            }
+        }
+        return clauses == 0 ? null : expanded.build();
+    }
+
+    @FunctionalInterface
+    private interface SourceQuery {
+        Query create(String source) throws ParseException;
+    }
+}
@@ -0,0 +1,112 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a bulk indexing run commits the index and the taxonomy.
+ * A commit is due once any of the configured limits is reached: documents added,
+ * megabytes buffered in the IndexWriter, or seconds elapsed since the last commit.
+ * A limit of 0 is disabled; with every limit disabled the run only commits when it ends.
+ */
+public class CommitPolicy {
+
+    private long maxDocs;
+    private double maxRamMB;
+    private long maxSeconds;
+
+    /**
+     * Creates a policy that only commits at the end of the run.
+     */
+    public CommitPolicy() {
+    }
+
+    /**
+     * Parses a policy such as "docs=100000,mb=512,seconds=300". Any subset of the
+     * limits may be given; an empty string commits only at the end of the run.
+     *
+     * @param spec the comma separated limits.
+     * @return the parsed policy.
+     * @throws IllegalArgumentException if a limit is unknown or not a number.
+     */
+    public static CommitPolicy parse(String spec) {
+        CommitPolicy policy = new CommitPolicy();
+        for (String limit : spec.split(",")) {
+            if (limit.isBlank()) {
+                continue;
+            }
+            String[] parts = limit.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected name=value, got: " + limit);
+            }
+            String value = parts[1].trim();
+            switch (parts[0].trim()) {
+                case "docs":
+                    policy.setMaxDocs(Long.parseLong(value));
+                    break;
+                case "mb":
+                    policy.setMaxRamMB(Double.parseDouble(value));
+                    break;
+                case "seconds":
+                    policy.setMaxSeconds(Long.parseLong(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown commit limit: " + parts[0]);
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * @param maxDocs commit after this many documents were added since the last commit.
+     * @return this instance.
+     */
+    public CommitPolicy setMaxDocs(long maxDocs) {
+        this.maxDocs = maxDocs;
+        return this;
+    }
+
+    /**
+     * @param maxRamMB commit once the IndexWriter buffers this many megabytes.
+     * @return this instance.
+     */
+    public CommitPolicy setMaxRamMB(double maxRamMB) {
+        this.maxRamMB = maxRamMB;
+        return this;
+    }
+
+    /**
+     * @param maxSeconds commit when this many seconds passed since the last commit.
+     * @return this instance.
+     */
+    public CommitPolicy setMaxSeconds(long maxSeconds) {
+        this.maxSeconds = maxSeconds;
+        return this;
+    }
+
+    /**
+     * @return true if the policy never commits before the end of the run.
+     */
+    public boolean isAtEndOnly() {
+        return maxDocs <= 0 && maxRamMB <= 0 && maxSeconds <= 0;
+    }
+
+    /**
+     * Checks whether a commit is due.
+     *
+     * @param docsSinceCommit documents added since the last commit.
+     * @param ramBytesUsed bytes currently buffered by the IndexWriter.
+     * @param nanosSinceCommit time elapsed since the last commit.
+     * @return true if any configured limit has been reached.
+     */
+    public boolean isDue(long docsSinceCommit, long ramBytesUsed, long nanosSinceCommit) {
+        return (maxDocs > 0 && docsSinceCommit >= maxDocs)
+                || (maxRamMB > 0 && ramBytesUsed >= maxRamMB * 1024 * 1024)
+                || (maxSeconds > 0 && nanosSinceCommit >= TimeUnit.SECONDS.toNanos(maxSeconds));
+    }
+
+    @Override
+    public String toString() {
+        return isAtEndOnly() ? "at end of run"
+                : "docs=" + maxDocs + ",mb=" + maxRamMB + ",seconds=" + maxSeconds;
+    }
+}
@@ -0,0 +1,126 @@
+package org.example;
+
+import org.apache.lucene.document.Field;
+import org.apache.lucene.facet.FacetField;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.ConcurrentSortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Where the categorical facets of an index (asin, date, and overall when it is not a range
+ * facet) are kept and counted from.
+ * <p>
+ * TAXONOMY is the original layout: the indexer assigns every category an ordinal in the side
+ * taxonomy index, one category at a time, and documents hold the ordinals.
+ * SORTED_SET keeps the category paths in SortedSetDocValues of the index itself, so indexing
+ * does not go through the taxonomy writer. The ordinals are instead mapped across segments
+ * when a reader is opened; that map is built once per reader and kept until it closes.
+ * The taxonomy directory is still created, empty, so both layouts open the same way.
+ */
+public enum FacetBackend {
+    /** Categories in the taxonomy index, counted with FastTaxonomyFacetCounts. */
+    TAXONOMY,
+    /** Categories in SortedSetDocValues, counted with SortedSetDocValuesFacetCounts. */
+    SORTED_SET;
+
+    // by reader cache key, dropped when the reader closes
+    private static final Map<Object, SortedSetDocValuesReaderState> STATES = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the facet field of a category, to be turned into doc values by {@link FacetsConfig#build}.
+     *
+     * @param dim the dimension, e.g. "date".
+     * @param path the value, e.g. "2014", "05".
+     * @return the facet field.
+     */
+    public Field facetField(String dim, String... path) {
+        return this == SORTED_SET ? new SortedSetDocValuesFacetField(dim, path) : new FacetField(dim, path);
+    }
+
+    /**
+     * Counts the categories of some hits. With a searcher from a {@link SearchConcurrency},
+     * sorted set counts are also computed per segment on its thread pool.
+     *
+     * @param searcher the searcher the hits come from.
+     * @param taxoReader the taxonomy reader matching the searcher; unused by SORTED_SET.
+     * @param config the facets configuration of the index.
+     * @param hits the hits.
+     * @return the counts of every categorical dimension.
+     * @throws IOException if the index cannot be read.
+     */
+    public Facets counts(IndexSearcher searcher, TaxonomyReader taxoReader, FacetsConfig config,
+                         FacetsCollector hits) throws IOException {
+        if (this == TAXONOMY) {
+            return new FastTaxonomyFacetCounts(taxoReader, config, hits);
+        }
+        SortedSetDocValuesReaderState state = state(searcher.getIndexReader(), config);
+        ExecutorService executor = SearchConcurrency.executor(searcher);
+        if (executor != null) {
+            try {
+                return new ConcurrentSortedSetDocValuesFacetCounts(state, hits, executor);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while counting facets");
+            }
+        }
+        return new SortedSetDocValuesFacetCounts(state, hits);
+    }
+
+    /**
+     * Returns the sorted set state of a reader, i.e. the global ordinals of the categories and
+     * the ordinal range of each dimension, building it on the first call for that reader.
+     * A DrillSideways given the state counts its categories from sorted set doc values.
+     *
+     * @param reader the top-level reader.
+     * @param config the facets configuration of the index.
+     * @return the state.
+     * @throws IOException if the doc values cannot be read.
+     */
+    static SortedSetDocValuesReaderState state(IndexReader reader, FacetsConfig config) throws IOException {
+        IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+        if (cacheHelper == null) {
+            return new DefaultSortedSetDocValuesReaderState(reader, config);
+        }
+        SortedSetDocValuesReaderState state = STATES.get(cacheHelper.getKey());
+        if (state == null) {
+            // built outside the map, two threads opening the same reader may both build it
+            state = new DefaultSortedSetDocValuesReaderState(reader, config);
+            SortedSetDocValuesReaderState previous = STATES.putIfAbsent(cacheHelper.getKey(), state);
+            if (previous != null) {
+                return previous;
+            }
+            cacheHelper.addClosedListener(STATES::remove);
+        }
+        return state;
+    }
+
+    /**
+     * Parses a backend name, ignoring case.
+     *
+     * @param name e.g. "sorted_set".
+     * @return the backend, or null if the name is empty or unknown.
+     */
+    public static FacetBackend parse(String name) {
+        for (FacetBackend backend : values()) {
+            if (backend.name().equalsIgnoreCase(name.trim())) {
+                return backend;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,258 @@
+package org.example;
+
+import org.apache.lucene.facet.DrillDownQuery;
+import org.apache.lucene.facet.DrillSideways;
+import org.apache.lucene.facet.DrillSideways.DrillSidewaysResult;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.MultiFacets;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Faceted navigation over the results of a query. Every dimension holds at most one
+ * selected value (a path such as year/month for "date"), and the selections narrow the
+ * query down. Each {@link #search(int)} is a single DrillSideways pass that returns the hits,
+ * the counts of the dimensions without a selection, and for every dimension with a selection
+ * the sideways counts of its siblings, i.e. what the count would be if that value were picked instead.
+ */
+public class FacetDrillDown {
+
+    /** The facet dimensions of the review index. */
+    public static final String[] DIMS = {"asin", "date", "overall"};
+
+    /** The most values of a dimension a {@link Result} keeps. */
+    public static final int MAX_FACET_VALUES = 100;
+
+    private final IndexSearcher searcher;
+    private final TaxonomyReader taxoReader;
+    private final FacetsConfig config;
+    private final Query baseQuery;
+    private final Map<String, String[]> selections = new LinkedHashMap<>();
+    private FacetResultCache cache;
+    private IndexSchema schema = new IndexSchema();
+    private RatingFacets ratings = RatingFacets.stars();
+
+    /**
+     * Starts navigating the results of a query, without any selection.
+     *
+     * @param searcher the searcher.
+     * @param taxoReader the taxonomy reader matching the searcher.
+     * @param config the facets configuration the index was built with, see {@link Indexer#getFconfig()}.
+     * @param baseQuery the query whose results are navigated.
+     */
+    public FacetDrillDown(IndexSearcher searcher, TaxonomyReader taxoReader, FacetsConfig config, Query baseQuery) {
+        this.searcher = searcher;
+        this.taxoReader = taxoReader;
+        this.config = config;
+        this.baseQuery = baseQuery;
+    }
+
+    /**
+     * Serves searches from a cache, so going back to selections already searched, or
+     * navigating the same query again, does not search and count again.
+     *
+     * @param cache the cache, or null to always search.
+     * @return this instance.
+     */
+    public FacetDrillDown setCache(FacetResultCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Sets the schema of the index, which decides where the categories are counted from. With
+     * double ratings "overall" is not a categorical dimension: it is counted in rating ranges
+     * and drilled into with a range query on the rating.
+     *
+     * @param schema the schema of the searcher's index; the default schema if not set.
+     * @return this instance.
+     */
+    public FacetDrillDown setSchema(IndexSchema schema) {
+        this.schema = schema;
+        return this;
+    }
+
+    /**
+     * Sets the ranges "overall" is counted in and selected by, for indexes with double ratings.
+     *
+     * @param ratings the ranges; one per star if not set.
+     * @return this instance.
+     */
+    public FacetDrillDown setRatingRanges(RatingFacets ratings) {
+        this.ratings = ratings;
+        return this;
+    }
+
+    /**
+     * Selects a value of a dimension, replacing any earlier selection of that dimension.
+     *
+     * @param dim the dimension, e.g. "date".
+     * @param path the value, e.g. "2014" or "2014", "05" for a month of a hierarchical dimension,
+     *             or the label of a rating range for "overall" with double ratings.
+     * @return this instance.
+     */
+    public FacetDrillDown select(String dim, String... path) {
+        selections.put(dim, path.clone());
+        return this;
+    }
+
+    /**
+     * Removes the selection of a dimension.
+     *
+     * @param dim the dimension.
+     * @return this instance.
+     */
+    public FacetDrillDown clear(String dim) {
+        selections.remove(dim);
+        return this;
+    }
+
+    /**
+     * @return the selected value of each dimension, in the order they were selected.
+     */
+    public Map<String, String[]> getSelections() {
+        return selections;
+    }
+
+    /**
+     * @return the base query narrowed down by the current selections.
+     */
+    public DrillDownQuery drillDownQuery() {
+        DrillDownQuery drillDownQuery = new DrillDownQuery(config, baseQuery);
+        for (Map.Entry<String, String[]> selection : selections.entrySet()) {
+            if (isRatingRanges(selection.getKey())) {
+                drillDownQuery.add(selection.getKey(), ratings.rangeQuery(selection.getValue()[0]));
+            } else {
+                drillDownQuery.add(selection.getKey(), selection.getValue());
+            }
+        }
+        return drillDownQuery;
+    }
+
+    /**
+     * Runs the query with the current selections, or returns the cached result of an earlier
+     * search with the same selections if a cache is set.
+     *
+     * @param topN the number of hits to return.
+     * @return the hits and the drill-down and sideways facet counts.
+     * @throws IOException if the index cannot be read.
+     */
+    public Result search(int topN) throws IOException {
+        if (cache == null) {
+            return materialize(newDrillSideways().search(drillDownQuery(), topN));
+        }
+        DrillDownQuery drillDownQuery = drillDownQuery();
+        return cache.get(searcher, baseQuery, selections, "drillSideways:" + topN + (schema.hasDoubleRatings() ? ratings : ""),
+                () -> materialize(newDrillSideways().search(drillDownQuery, topN)));
+    }
+
+    /**
+     * Returns the counts of a dimension below the selected value, at the top level if nothing
+     * is selected in it, or next to the selected value if that has no children (e.g. the other
+     * months of the year when a month is selected).
+     *
+     * @param result the result of {@link #search(int)}.
+     * @param dim the dimension.
+     * @param topN the number of values to return, at most {@link #MAX_FACET_VALUES}.
+     * @return the counts, or null if the dimension has no values in the result.
+     */
+    public FacetResult childCounts(Result result, String dim, int topN) {
+        FacetResult counts = result.childCounts.get(dim);
+        if (counts == null || isRatingRanges(dim) || counts.labelValues.length <= topN) {
+            return counts;
+        }
+        // the values are sorted by count, so the top N are the first N of a longer list
+        return new FacetResult(counts.dim, counts.path, counts.value,
+                Arrays.copyOf(counts.labelValues, topN), counts.childCount);
+    }
+
+    // keeps the hits and the counts that are shown, not the Facets, whose count arrays are sized to the taxonomy
+    private Result materialize(DrillSidewaysResult result) throws IOException {
+        Map<String, FacetResult> childCounts = new HashMap<>();
+        for (String dim : DIMS) {
+            FacetResult counts = childCounts(result.facets, dim);
+            if (counts != null) {
+                childCounts.put(dim, counts);
+            }
+        }
+        return new Result(result.hits, childCounts);
+    }
+
+    private FacetResult childCounts(Facets facets, String dim) throws IOException {
+        String[] selected = selections.get(dim);
+        if (isRatingRanges(dim)) {
+            return facets.getAllChildren(dim); // every range, in the order they were defined
+        }
+        if (selected != null && config.getDimConfig(dim).hierarchical) {
+            FacetResult children = facets.getTopChildren(MAX_FACET_VALUES, dim, selected);
+            if ((children == null || children.labelValues.length == 0) && selected.length > 1) {
+                children = facets.getTopChildren(MAX_FACET_VALUES, dim, Arrays.copyOf(selected, selected.length - 1));
+            }
+            return children;
+        }
+        return facets.getTopChildren(MAX_FACET_VALUES, dim);
+    }
+
+    private boolean isRatingRanges(String dim) {
+        return dim.equals(RatingFacets.FIELD) && schema.hasDoubleRatings();
+    }
+
+    /**
+     * Creates the DrillSideways for one search, counting the categories from the schema's
+     * {@link FacetBackend}. With double ratings its facets count "overall" in the rating
+     * ranges, from the sideways hits when a range is selected.
+     *
+     * @return a DrillSideways on this instance's searcher.
+     * @throws IOException if the sorted set facet state cannot be built.
+     */
+    protected DrillSideways newDrillSideways() throws IOException {
+        // DrillSideways counts from the taxonomy when it has one, from the sorted set state otherwise
+        boolean sortedSet = schema.getFacetBackend() == FacetBackend.SORTED_SET;
+        TaxonomyReader categoryTaxonomy = sortedSet ? null : taxoReader;
+        SortedSetDocValuesReaderState state = sortedSet ? FacetBackend.state(searcher.getIndexReader(), config) : null;
+        if (!schema.hasDoubleRatings()) {
+            return new DrillSideways(searcher, config, categoryTaxonomy, state);
+        }
+        return new DrillSideways(searcher, config, categoryTaxonomy, state) {
+            @Override
+            protected Facets buildFacetsResult(FacetsCollector drillDowns, FacetsCollector[] drillSideways,
+                                               String[] drillSidewaysDims) throws IOException {
+                Facets categoryFacets = super.buildFacetsResult(drillDowns, drillSideways, drillSidewaysDims);
+                FacetsCollector ratingHits = drillDowns;
+                for (int i = 0; drillSidewaysDims != null && i < drillSidewaysDims.length; i++) { // null without selections
+                    if (drillSidewaysDims[i].equals(RatingFacets.FIELD)) {
+                        ratingHits = drillSideways[i];
+                    }
+                }
+                return new MultiFacets(Map.of(RatingFacets.FIELD, ratings.counts(ratingHits, schema)), categoryFacets);
+            }
+        };
+    }
+
+    /**
+     * The outcome of a {@link #search(int)}: the hits, and the counts of every dimension as
+     * {@link #childCounts} returns them, up to {@link #MAX_FACET_VALUES} values each.
+     */
+    public static class Result {
+        /** The hits of the query narrowed down by the selections. */
+        public final TopDocs hits;
+        private final Map<String, FacetResult> childCounts;
+
+        Result(TopDocs hits, Map<String, FacetResult> childCounts) {
+            this.hits = hits;
+            this.childCounts = childCounts;
+        }
+    }
+}
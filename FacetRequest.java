@@ -0,0 +1,235 @@
+package org.example;
+
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.taxonomy.FacetLabel;
+import org.apache.lucene.facet.taxonomy.ParallelTaxonomyArrays;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The facet dimensions a caller wants counted, each with its own number of top values, e.g.
+ * the 10 most reviewed products and every year. Dimensions that are not asked for are not
+ * ranked and their labels are not looked up, unlike getAllDims.
+ * <p>
+ * With the taxonomy, the ordinals of the hits are counted once into an array, and each
+ * dimension's children are ranked in a heap of packed primitive (count, ordinal) pairs; only the
+ * ordinals that make it into the top are turned into labels, through a cache of the labels of
+ * the taxonomy reader. With sorted set facets the labels come from the ordinal map of the
+ * reader, and the counts are ranked by SortedSetDocValuesFacetCounts.
+ */
+public class FacetRequest {
+
+    // labels already looked up, by ordinal; ordinals of a taxonomy reader never change
+    private static final Map<TaxonomyReader, String[]> LABELS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Map<String, Integer> dims = new LinkedHashMap<>();
+
+    /**
+     * Creates a request counting every facet dimension of the review index with the same number of values.
+     *
+     * @param topN the number of values per dimension.
+     * @return the request.
+     */
+    public static FacetRequest allDims(int topN) {
+        FacetRequest request = new FacetRequest();
+        for (String dim : FacetDrillDown.DIMS) {
+            request.add(dim, topN);
+        }
+        return request;
+    }
+
+    /**
+     * Asks for the top values of a dimension, at its top level (years for "date").
+     *
+     * @param dim the dimension, e.g. "asin".
+     * @param topN the number of values, highest count first.
+     * @return this instance.
+     */
+    public FacetRequest add(String dim, int topN) {
+        if (topN < 1) {
+            throw new IllegalArgumentException("topN must be positive");
+        }
+        dims.put(dim, topN);
+        return this;
+    }
+
+    /** @return the number of values asked for each dimension, in the order they were added. */
+    public Map<String, Integer> getDims() {return Collections.unmodifiableMap(dims);}
+
+    /**
+     * Counts the requested dimensions of some hits.
+     *
+     * @param searcher the searcher the hits come from.
+     * @param taxoReader the taxonomy reader matching the searcher.
+     * @param config the facets configuration of the index.
+     * @param hits the hits.
+     * @param schema the schema of the searcher's index.
+     * @return the counts of each requested dimension the hits have values in, in request order;
+     *         values are ordered by count, then by ordinal, as getTopChildren orders them.
+     * @throws IOException if the index cannot be read.
+     */
+    public List<FacetResult> count(IndexSearcher searcher, TaxonomyReader taxoReader, FacetsConfig config,
+                                   FacetsCollector hits, IndexSchema schema) throws IOException {
+        List<FacetResult> results = new ArrayList<>();
+        Facets sortedSetCounts = null;
+        Map<String, int[]> ordinalCounts = new HashMap<>(); // by index field, shared by its dimensions
+        for (Map.Entry<String, Integer> dim : dims.entrySet()) {
+            FacetResult result;
+            if (dim.getKey().equals(RatingFacets.FIELD) && schema.hasDoubleRatings()) {
+                result = RatingFacets.starCounts(hits, schema);
+            } else if (schema.getFacetBackend() == FacetBackend.SORTED_SET) {
+                if (sortedSetCounts == null) {
+                    sortedSetCounts = FacetBackend.SORTED_SET.counts(searcher, taxoReader, config, hits);
+                }
+                result = sortedSetCounts.getTopChildren(dim.getValue(), dim.getKey());
+            } else {
+                String field = config.getDimConfig(dim.getKey()).indexFieldName;
+                int[] counts = ordinalCounts.get(field);
+                if (counts == null) {
+                    counts = countOrdinals(taxoReader, field, hits);
+                    ordinalCounts.put(field, counts);
+                }
+                result = topChildren(taxoReader, counts, dim.getKey(), dim.getValue());
+            }
+            if (result != null && result.labelValues.length > 0) {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    // the number of hits of every ordinal of the taxonomy, in one pass over the ordinals of the hits
+    private static int[] countOrdinals(TaxonomyReader taxoReader, String field, FacetsCollector hits) throws IOException {
+        int[] counts = new int[taxoReader.getSize()];
+        for (FacetsCollector.MatchingDocs matchingDocs : hits.getMatchingDocs()) {
+            SortedNumericDocValues ordinals = DocValues.getSortedNumeric(matchingDocs.context.reader(), field);
+            DocIdSetIterator docs = matchingDocs.bits.iterator();
+            if (docs == null) {
+                continue;
+            }
+            for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+                if (ordinals.advanceExact(doc)) {
+                    for (int i = 0; i < ordinals.docValueCount(); i++) {
+                        counts[(int) ordinals.nextValue()]++;
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static FacetResult topChildren(TaxonomyReader taxoReader, int[] counts, String dim, int topN) throws IOException {
+        int dimOrdinal = taxoReader.getOrdinal(new FacetLabel(dim));
+        if (dimOrdinal == TaxonomyReader.INVALID_ORDINAL) {
+            return null;
+        }
+        ParallelTaxonomyArrays arrays = taxoReader.getParallelTaxonomyArrays();
+        ParallelTaxonomyArrays.IntArray children = arrays.children();
+        ParallelTaxonomyArrays.IntArray siblings = arrays.siblings();
+        // min-heap of count << 32 | (MAX_VALUE - ordinal): the root is the lowest count, and of equal counts the highest ordinal
+        long[] heap = new long[topN];
+        int size = 0;
+        int total = 0;
+        int childCount = 0;
+        for (int child = children.get(dimOrdinal); child != TaxonomyReader.INVALID_ORDINAL; child = siblings.get(child)) {
+            // only the leaves of a hierarchical dimension are indexed, so a value counts its descendants too
+            int count = counts[child] + descendantCount(counts, children, siblings, child);
+            if (count == 0) {
+                continue;
+            }
+            total += count;
+            childCount++;
+            long entry = (long) count << 32 | (Integer.MAX_VALUE - child);
+            if (size < topN) {
+                heap[size] = entry;
+                siftUp(heap, size++);
+            } else if (entry > heap[0]) {
+                heap[0] = entry;
+                siftDown(heap, size);
+            }
+        }
+        long[] top = Arrays.copyOf(heap, size);
+        Arrays.sort(top);
+        String[] labels = labels(taxoReader);
+        LabelAndValue[] labelValues = new LabelAndValue[size];
+        for (int i = 0; i < size; i++) {
+            long entry = top[size - 1 - i];
+            int ordinal = Integer.MAX_VALUE - (int) entry;
+            String label = labels[ordinal];
+            if (label == null) {
+                FacetLabel path = taxoReader.getPath(ordinal);
+                label = path.components[path.length - 1];
+                labels[ordinal] = label; // racy but idempotent
+            }
+            labelValues[i] = new LabelAndValue(label, (int) (entry >>> 32));
+        }
+        return new FacetResult(dim, new String[0], total, labelValues, childCount);
+    }
+
+    private static int descendantCount(int[] counts, ParallelTaxonomyArrays.IntArray children,
+                                       ParallelTaxonomyArrays.IntArray siblings, int ordinal) {
+        int count = 0;
+        for (int child = children.get(ordinal); child != TaxonomyReader.INVALID_ORDINAL; child = siblings.get(child)) {
+            count += counts[child] + descendantCount(counts, children, siblings, child);
+        }
+        return count;
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        long entry = heap[i];
+        while (i > 0 && heap[(i - 1) / 2] > entry) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = entry;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        long entry = heap[0];
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= entry) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = entry;
+    }
+
+    private static String[] labels(TaxonomyReader taxoReader) {
+        synchronized (LABELS) {
+            return LABELS.computeIfAbsent(taxoReader, reader -> new String[reader.getSize()]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Integer> dim : dims.entrySet()) {
+            text.append(text.length() == 0 ? "" : ",").append(dim.getKey()).append(':').append(dim.getValue());
+        }
+        return text.toString();
+    }
+}
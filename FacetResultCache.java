@@ -0,0 +1,225 @@
+package org.example;
+
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of facet results, so a query that is run again, or refined back and forth
+ * during a drill down, skips collecting its hits and counting them.
+ * Entries are keyed by the query, compared with equals as in Lucene's query cache, the
+ * drill-down selections, what was asked for, and the index reader the results were counted on.
+ * Queries that merely print the same text therefore never share an entry, a result is never
+ * served for another reader, and {@link #invalidator()} drops every entry when the searcher
+ * is refreshed. Queries must not be modified once used as a key.
+ */
+public class FacetResultCache {
+
+    /** Entries kept by default before the least recently used one is evicted. */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, Object> entries; // guarded by this; iteration order is least recently used first
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache holding up to {@link #DEFAULT_MAX_ENTRIES} entries.
+     */
+    public FacetResultCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries the number of entries kept before the least recently used one is evicted.
+     */
+    public FacetResultCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                if (size() > FacetResultCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the counts of some facet dimensions for the hits of a query, estimated from a
+     * sample of the hits when the query has more than the sampler's threshold, counting them
+     * only if they are not cached yet.
+     *
+     * @param searcher the searcher.
+     * @param taxoReader the taxonomy reader matching the searcher.
+     * @param schema the schema of the searcher's index.
+     * @param query the query.
+     * @param request the dimensions to count and how many values of each.
+     * @param sampler decides when and how much to sample.
+     * @return the counts per dimension, with their margins of error.
+     * @throws IOException if the index cannot be read.
+     */
+    public FacetSampler.Counts getCounts(IndexSearcher searcher, TaxonomyReader taxoReader, IndexSchema schema,
+                                         Query query, FacetRequest request, FacetSampler sampler) throws IOException {
+        return get(searcher, query, Map.of(), "facets:" + request + ", " + sampler,
+                () -> sampler.count(searcher, taxoReader, Indexer.getFconfig(), schema, query, request));
+    }
+
+    /**
+     * Returns a cached value, computing and caching it if missing. The value must not be
+     * modified by the caller, as later lookups get the same instance. Entries are only bounded
+     * in number, so the value should be the materialized counts, such as a list of
+     * {@link FacetResult}, and not the Facets they were read from, whose count arrays are
+     * sized to the whole taxonomy.
+     *
+     * @param searcher the searcher the value is computed with.
+     * @param query the query.
+     * @param drillDims the drill-down selections applied to the query, by dimension.
+     * @param request what is computed, e.g. "drillSideways:10"; different requests on the same query are cached apart.
+     * @param loader computes the value on a miss.
+     * @param <T> the type of the value.
+     * @return the cached or computed value.
+     * @throws IOException if the loader fails.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(IndexSearcher searcher, Query query, Map<String, String[]> drillDims, String request,
+                     Loader<T> loader) throws IOException {
+        IndexReader.CacheHelper cacheHelper = searcher.getIndexReader().getReaderCacheHelper();
+        if (cacheHelper == null) {
+            misses.incrementAndGet();
+            return loader.load(); // the reader cannot tell when it changes, so it cannot be cached safely
+        }
+        Key key = new Key(query, drillDimsKey(drillDims), request, cacheHelper.getKey());
+        Object value;
+        synchronized (this) {
+            value = entries.get(key);
+        }
+        if (value != null) {
+            hits.incrementAndGet();
+            return (T) value;
+        }
+        misses.incrementAndGet();
+        // computed outside the lock; two threads missing on the same key both compute it
+        T loaded = loader.load();
+        synchronized (this) {
+            entries.put(key, loaded);
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns a listener that clears the cache whenever the searcher it is added to is refreshed,
+     * see {@link SearchService#addRefreshListener}.
+     *
+     * @return the listener.
+     */
+    public ReferenceManager.RefreshListener invalidator() {
+        return new ReferenceManager.RefreshListener() {
+            @Override
+            public void beforeRefresh() {
+            }
+
+            @Override
+            public void afterRefresh(boolean didRefresh) {
+                if (didRefresh) {
+                    clear();
+                }
+            }
+        };
+    }
+
+    public synchronized int size() {return entries.size();}
+
+    public long getHits() {return hits.get();}
+
+    public long getMisses() {return misses.get();}
+
+    public long getEvictions() {return evictions.get();}
+
+    /**
+     * @return the share of lookups served from the cache, 0 before the first lookup.
+     */
+    public double getHitRate() {
+        long lookups = hits.get() + misses.get();
+        return lookups == 0 ? 0 : (double) hits.get() / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("facet cache: %d entries, %d hits, %d misses (%.0f%% hit rate), %d evictions",
+                size(), getHits(), getMisses(), getHitRate() * 100, getEvictions());
+    }
+
+    // dimensions in a fixed order, so the same selections made in another order share an entry
+    private static String drillDimsKey(Map<String, String[]> drillDims) {
+        StringBuilder key = new StringBuilder();
+        drillDims.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> key.append(entry.getKey()).append('=').append(String.join("/", entry.getValue())).append(';'));
+        return key.toString();
+    }
+
+    /**
+     * Computes a value on a cache miss.
+     *
+     * @param <T> the type of the value.
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    private static final class Key {
+        private final Query query;
+        private final String drillDims;
+        private final String request;
+        private final Object readerKey;
+
+        Key(Query query, String drillDims, String request, Object readerKey) {
+            this.query = query;
+            this.drillDims = drillDims;
+            this.request = request;
+            this.readerKey = readerKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return query.equals(other.query) && drillDims.equals(other.drillDims)
+                    && request.equals(other.request) && readerKey == other.readerKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, drillDims, request, System.identityHashCode(readerKey));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.example;
+
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.RandomSamplingFacetsCollector;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts the facets of queries with many hits from a random sample of the hits, so counting
+ * a broad query (a common word in reviewText) costs about the same as counting a narrow one.
+ * <p>
+ * Every query is searched once with a RandomSamplingFacetsCollector. Queries with up to
+ * {@link #getHitThreshold()} hits are counted exactly from all the hits it collected. Above it,
+ * the collector keeps about {@link #getSampleSize()} of the hits, those are counted, and the
+ * counts are scaled up by the number of hits per sampled hit. Each estimate comes with the
+ * half-width of its 95% confidence interval, see {@link Counts#margin}.
+ * The sample is drawn with a fixed seed, so the same query on the same reader gives the same estimates.
+ */
+public class FacetSampler {
+
+    /** Hits above which facets are sampled, by default. */
+    public static final int DEFAULT_HIT_THRESHOLD = 100_000;
+    /** Hits kept in a sample, by default. */
+    public static final int DEFAULT_SAMPLE_SIZE = 10_000;
+
+    private static final long SEED = 0x5eed;
+    private static final double Z_95 = 1.96;
+
+    private int hitThreshold = DEFAULT_HIT_THRESHOLD;
+    private int sampleSize = DEFAULT_SAMPLE_SIZE;
+
+    /**
+     * @param hitThreshold the number of hits above which facets are estimated from a sample.
+     * @return this instance.
+     */
+    public FacetSampler setHitThreshold(int hitThreshold) {
+        if (hitThreshold < 0) {
+            throw new IllegalArgumentException("hitThreshold must not be negative");
+        }
+        this.hitThreshold = hitThreshold;
+        return this;
+    }
+
+    /**
+     * @param sampleSize the number of hits counted for an estimate; the error shrinks with its square root.
+     * @return this instance.
+     */
+    public FacetSampler setSampleSize(int sampleSize) {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("sampleSize must be positive");
+        }
+        this.sampleSize = sampleSize;
+        return this;
+    }
+
+    public int getHitThreshold() {return hitThreshold;}
+
+    public int getSampleSize() {return sampleSize;}
+
+    /**
+     * Counts the requested facet dimensions of a query's hits, from a sample if it has more hits than the threshold.
+     *
+     * @param searcher the searcher.
+     * @param taxoReader the taxonomy reader matching the searcher.
+     * @param config the facets configuration of the index.
+     * @param schema the schema of the searcher's index.
+     * @param query the query.
+     * @param request the dimensions to count and how many values of each.
+     * @return the counts, as {@link FacetRequest#count} returns them, scaled up if sampled.
+     * @throws IOException if the index cannot be read.
+     */
+    public Counts count(IndexSearcher searcher, TaxonomyReader taxoReader, FacetsConfig config, IndexSchema schema,
+                        Query query, FacetRequest request) throws IOException {
+        // one pass: the collector keeps every hit and samples them only once the search is done
+        RandomSamplingFacetsCollector sample = searcher.search(query, RandomSamplingFacetsCollector.createManager(sampleSize, SEED));
+        List<FacetsCollector.MatchingDocs> allHits = sample.getOriginalMatchingDocs();
+        int totalHits = 0;
+        for (FacetsCollector.MatchingDocs matchingDocs : allHits) {
+            totalHits += matchingDocs.totalHits;
+        }
+        if (totalHits <= hitThreshold) {
+            FacetsCollector hits = new FacetsCollector() {
+                @Override
+                public List<MatchingDocs> getMatchingDocs() {
+                    return allHits;
+                }
+            };
+            return new Counts(request.count(searcher, taxoReader, config, hits, schema), totalHits, totalHits);
+        }
+        // the sampled MatchingDocs keep the segment's total hit count, so the sample is counted from its bits
+        int sampledHits = 0;
+        for (FacetsCollector.MatchingDocs matchingDocs : sample.getMatchingDocs()) {
+            DocIdSetIterator docs = matchingDocs.bits.iterator();
+            if (docs != null) {
+                while (docs.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                    sampledHits++;
+                }
+            }
+        }
+        // scaled by the share of hits actually sampled; amortizeFacetCounts uses the requested rate, which the
+        // collector overshoots when the inverse of the rate is not a whole number of hits per sampled hit
+        double factor = (double) totalHits / Math.max(1, sampledHits);
+        List<FacetResult> dims = new ArrayList<>();
+        for (FacetResult dim : request.count(searcher, taxoReader, config, sample, schema)) {
+            dims.add(scale(dim, factor, totalHits));
+        }
+        return new Counts(dims, totalHits, sampledHits);
+    }
+
+    private static FacetResult scale(FacetResult result, double factor, int totalHits) {
+        LabelAndValue[] scaled = new LabelAndValue[result.labelValues.length];
+        for (int i = 0; i < scaled.length; i++) {
+            LabelAndValue lv = result.labelValues[i];
+            scaled[i] = new LabelAndValue(lv.label, (int) Math.min(totalHits, Math.round(lv.value.doubleValue() * factor)));
+        }
+        return new FacetResult(result.dim, result.path,
+                (int) Math.min(totalHits, Math.round(result.value.doubleValue() * factor)), scaled, result.childCount);
+    }
+
+    @Override
+    public String toString() {
+        return "sampling above " + hitThreshold + " hits, " + sampleSize + " per sample";
+    }
+
+    /**
+     * The facet counts of a query, exact or estimated from a sample of its hits.
+     */
+    public static class Counts {
+        private final List<FacetResult> dims;
+        private final int totalHits;
+        private final int sampledHits;
+
+        Counts(List<FacetResult> dims, int totalHits, int sampledHits) {
+            this.dims = Collections.unmodifiableList(dims);
+            this.totalHits = totalHits;
+            this.sampledHits = sampledHits;
+        }
+
+        /** @return the counts per dimension. */
+        public List<FacetResult> getDims() {return dims;}
+
+        /** @return the number of hits of the query. */
+        public int getTotalHits() {return totalHits;}
+
+        /** @return the number of hits the counts were computed from, all of them unless sampled. */
+        public int getSampledHits() {return sampledHits;}
+
+        /** @return true if the counts are estimates. */
+        public boolean isSampled() {return sampledHits < totalHits;}
+
+        /**
+         * Returns the half-width of the 95% confidence interval of a count: the count is the
+         * share of the hits with a value, estimated from a simple random sample of the hits, so
+         * its standard error is that of a proportion, with the finite population correction.
+         *
+         * @param estimate a count of {@link #getDims()}.
+         * @return the margin of error, 0 if the counts are exact.
+         */
+        public int margin(Number estimate) {
+            if (!isSampled() || sampledHits == 0) {
+                return 0;
+            }
+            double share = Math.min(1, estimate.doubleValue() / totalHits);
+            double variance = share * (1 - share) / sampledHits * (1 - (double) sampledHits / totalHits);
+            return (int) Math.ceil(Z_95 * totalHits * Math.sqrt(variance));
+        }
+
+        /**
+         * @param lv a value of one of the dimensions.
+         * @return its count, e.g. "42", or "~420 +/-35" if estimated.
+         */
+        public String format(LabelAndValue lv) {
+            return isSampled() ? "~" + lv.value + " +/-" + margin(lv.value) : String.valueOf(lv.value);
+        }
+
+        @Override
+        public String toString() {
+            return isSampled()
+                    ? "facet counts estimated from " + sampledHits + " of " + totalHits + " hits, +/- 95% confidence"
+                    : "facet counts of all " + totalHits + " hits";
+        }
+    }
+}
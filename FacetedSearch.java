@@ -0,0 +1,52 @@
+package org.example;
+
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsCollectorManager;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiCollectorManager;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollectorManager;
+
+import java.io.IOException;
+
+/**
+ * Runs a query collecting both its top hits and its facet hits, through collector managers
+ * so that a searcher with an executor searches its slices in parallel. The top hits are
+ * merged across slices and so are the matching documents the facet counts are computed from.
+ * It replaces FacetsCollector.search, which always searches every segment on the calling thread.
+ */
+public class FacetedSearch {
+
+    private final TopDocs topDocs;
+    private final FacetsCollector facetsCollector;
+
+    private FacetedSearch(TopDocs topDocs, FacetsCollector facetsCollector) {
+        this.topDocs = topDocs;
+        this.facetsCollector = facetsCollector;
+    }
+
+    /**
+     * Searches for the top hits of a query and collects all its hits for faceting.
+     *
+     * @param searcher the searcher, with or without an executor.
+     * @param query the query.
+     * @param n the number of top hits to return.
+     * @return the top hits and the facet hits.
+     * @throws IOException if the index cannot be read.
+     */
+    public static FacetedSearch search(IndexSearcher searcher, Query query, int n) throws IOException {
+        // facet counts need every hit anyway, so the total hit count is always exact
+        MultiCollectorManager manager = new MultiCollectorManager(
+                new TopScoreDocCollectorManager(Math.max(1, n), null, Integer.MAX_VALUE),
+                new FacetsCollectorManager());
+        Object[] results = searcher.search(query, manager);
+        return new FacetedSearch((TopDocs) results[0], (FacetsCollector) results[1]);
+    }
+
+    /** @return the top hits. */
+    public TopDocs getTopDocs() {return topDocs;}
+
+    /** @return the hits of every slice, to count facets from. */
+    public FacetsCollector getFacetsCollector() {return facetsCollector;}
+}
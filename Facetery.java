@@ -1,25 +1,23 @@
 package org.example;
 
-import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.document.*;
 import org.apache.lucene.facet.*;
 import org.apache.lucene.facet.range.*;
 import org.apache.lucene.facet.range.DoubleRange;
 import org.apache.lucene.facet.range.LongRange;
 import org.apache.lucene.facet.taxonomy.*;
-import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
+import org.apache.lucene.facet.taxonomy.SearcherTaxonomyManager.SearcherAndTaxonomy;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.*;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.*;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
-import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
@@ -32,6 +30,21 @@ public class Facetery {
     private String indexPath;
     private String taxoPath;
     private FacetsConfig config;
+    private IndexSchema schema = new IndexSchema();
+    // opened on first search and kept warm across searches
+    private SearchService searchService;
+    private SearchConcurrency searchConcurrency;
+    private static final int RESULTS_PER_PAGE = 10;
+    // facet counts of recent queries, dropped whenever the shared searcher is refreshed
+    private final FacetResultCache facetCache = new FacetResultCache();
+    // queries with more hits than its threshold get their facets counted from a sample
+    private final FacetSampler facetSampler = new FacetSampler();
+    // the most reviewed products and every year and rating of a query's hits
+    private static final FacetRequest QUERY_FACETS = new FacetRequest().add("asin", 10).add("date", 100).add("overall", 100);
+    // the numeric query is on a single product, so only its years and ratings
+    private static final FacetRequest PRODUCT_FACETS = new FacetRequest().add("date", 100).add("overall", 100);
+    // per-product counts of the numeric query, brought up to date with each searcher it is used with
+    private final ProductSummaries productSummaries = new ProductSummaries();
 
     /**
      * Main method to interact with the Facetery functionality via console inputs.
@@ -72,12 +85,17 @@ public class Facetery {
                     // Get path for file directory
                     System.out.print("Enter the path to the file directory: ");
                     String filePath = scanner.nextLine();
-                    baseline.indexDocumentsWithFacets(filePath);
+                    baseline.indexDocumentsWithFacets(filePath, readIndexingOptions(scanner), readIndexSchema(scanner));
                     break;
                 case 2:
+                    if (!baseline.hasSearchService()) {
+                        baseline.setSearchConcurrency(readSearchConcurrency(scanner));
+                    }
                     baseline.searchWithFacets(indexPath, taxoPath);
                     break;
-                case 3: System.exit(0);
+                case 3:
+                    baseline.close();
+                    System.exit(0);
                 default:
                     System.out.println("Invalid choice. Please try again.");
             }
@@ -105,6 +123,203 @@ public class Facetery {
      */
     public void indexDocumentsWithFacets(String filePath) {
         Indexer.executeIndexer(filePath, this.indexPath, this.taxoPath);
+        refreshSearcher();
+    }
+
+    /**
+     * Indexes documents with facets from the specified file path using the given options.
+     *
+     * @param filePath The path to the directory containing documents to index.
+     * @param options The runtime options for the indexing run.
+     */
+    public void indexDocumentsWithFacets(String filePath, IndexingOptions options) {
+        Indexer.executeIndexer(filePath, this.indexPath, this.taxoPath, options);
+        refreshSearcher();
+    }
+
+    /**
+     * Indexes documents with facets from the specified file path using the given options and schema.
+     *
+     * @param filePath The path to the directory containing documents to index.
+     * @param options The runtime options for the indexing run.
+     * @param schema The fields to write; an existing index that is appended to keeps its own.
+     */
+    public void indexDocumentsWithFacets(String filePath, IndexingOptions options, IndexSchema schema) {
+        Indexer.executeIndexer(filePath, this.indexPath, this.taxoPath, options, schema);
+        refreshSearcher();
+    }
+
+    /**
+     * Makes the open searcher see the documents committed by the last indexing run,
+     * instead of waiting for the next scheduled refresh.
+     */
+    private void refreshSearcher() {
+        if (searchService != null) {
+            try {
+                searchService.maybeRefresh();
+            } catch (IOException e) {
+                System.err.println("Error refreshing the searcher: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the search service of this instance's index, opening it on first use.
+     *
+     * @return the shared search service.
+     * @throws IOException If the index directories cannot be opened.
+     */
+    public synchronized SearchService getSearchService() throws IOException {
+        if (searchService == null) {
+            searchService = new SearchService(indexPath, taxoPath, SearchService.DEFAULT_REFRESH_SECONDS, searchConcurrency);
+            searchService.addRefreshListener(facetCache.invalidator());
+        }
+        return searchService;
+    }
+
+    /**
+     * @return True once the search service has been opened by a first search.
+     */
+    public synchronized boolean hasSearchService() {
+        return searchService != null;
+    }
+
+    /**
+     * @return The cache of facet counts shared by the searches of this instance.
+     */
+    public FacetResultCache getFacetCache() {
+        return facetCache;
+    }
+
+    /**
+     * Sets how the segments are searched; only takes effect before the first search.
+     *
+     * @param searchConcurrency The thread pool and slicing, or null to search on the calling thread.
+     */
+    public synchronized void setSearchConcurrency(SearchConcurrency searchConcurrency) {
+        this.searchConcurrency = searchConcurrency;
+    }
+
+    /**
+     * Asks the user whether searches should use several threads.
+     *
+     * @param scanner Scanner for user input.
+     * @return The concurrency settings, or null to search on the calling thread.
+     */
+    private static SearchConcurrency readSearchConcurrency(Scanner scanner) {
+        System.out.print("Search threads (Enter to search on a single thread, v for virtual threads): ");
+        String threads = scanner.nextLine().trim();
+        if (threads.isEmpty()) {
+            return null;
+        }
+        SearchConcurrency concurrency = new SearchConcurrency();
+        if (threads.equalsIgnoreCase("v")) {
+            concurrency.setVirtualThreads(true);
+        } else {
+            concurrency.setThreads(Integer.parseInt(threads));
+        }
+        System.out.print("Max documents and segments per slice (e.g. 250000,5; Enter for the defaults): ");
+        String limits = scanner.nextLine().trim();
+        if (!limits.isEmpty()) {
+            String[] parts = limits.split(",");
+            concurrency.setSliceLimits(Integer.parseInt(parts[0].trim()),
+                    parts.length > 1 ? Integer.parseInt(parts[1].trim()) : concurrency.getMaxSegmentsPerSlice());
+        }
+        return concurrency;
+    }
+
+    /**
+     * Closes the search service, if one was opened.
+     */
+    public synchronized void close() {
+        if (searchService != null) {
+            try {
+                searchService.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the searcher: " + e.getMessage());
+            }
+            searchService = null;
+        }
+    }
+
+    /**
+     * Asks the user which fields a new index should have.
+     *
+     * @param scanner Scanner for user input.
+     * @return The schema for the index.
+     */
+    private static IndexSchema readIndexSchema(Scanner scanner) {
+        IndexSchema schema = new IndexSchema();
+        System.out.print("Index the catch-all 'everything' field? (y/n, n searches the real fields instead): ");
+        schema.setCatchAllField(!scanner.nextLine().trim().equalsIgnoreCase("n"));
+        System.out.print("Store term vectors for reviewText? (y/n): ");
+        schema.setTermVectors(scanner.nextLine().trim().equalsIgnoreCase("y"));
+        System.out.print("Sort the index by overall, date, asin or product (asin, date, overall)? (Enter to keep documents unsorted): ");
+        schema.setIndexSort(ResultPager.SortMode.parse(scanner.nextLine()));
+        System.out.print("Keep the facets in sorted set doc values instead of the taxonomy? (y/n): ");
+        schema.setFacetBackend(scanner.nextLine().trim().equalsIgnoreCase("y") ? FacetBackend.SORTED_SET : FacetBackend.TAXONOMY);
+        System.out.print("Index review vectors for similar reviews? (y/n): ");
+        schema.setReviewVectors(scanner.nextLine().trim().equalsIgnoreCase("y") ? ReviewVectors.DEFAULT_DIMENSION : 0);
+        return schema;
+    }
+
+    /**
+     * Asks the user how the indexing run should be executed.
+     *
+     * @param scanner Scanner for user input.
+     * @return The options for the indexing run.
+     */
+    private static IndexingOptions readIndexingOptions(Scanner scanner) {
+        IndexingOptions options = new IndexingOptions();
+
+        System.out.print("Reader, parser and builder threads for parallel indexing (e.g. 1,2,4; Enter for sequential): ");
+        String threads = scanner.nextLine().trim();
+        if (!threads.isEmpty()) {
+            String[] counts = threads.split(",");
+            if (counts.length == 3) {
+                options.setParallel(Integer.parseInt(counts[0].trim()),
+                        Integer.parseInt(counts[1].trim()),
+                        Integer.parseInt(counts[2].trim()));
+            } else {
+                System.out.println("Expected three thread counts, indexing sequentially.");
+            }
+        }
+
+        System.out.print("Use the streaming JSON parser? (y/n): ");
+        options.setStreamingParser(scanner.nextLine().trim().equalsIgnoreCase("y"));
+
+        System.out.print("Add only new reviews to the existing index instead of rebuilding it? (y/n): ");
+        options.setIncremental(scanner.nextLine().trim().equalsIgnoreCase("y"));
+
+        System.out.print("Commit checkpoints every (e.g. docs=100000,mb=512,seconds=300; Enter to commit only at the end): ");
+        try {
+            options.setCommitPolicy(CommitPolicy.parse(scanner.nextLine()));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage() + ", committing only at the end.");
+        }
+
+        System.out.print("Indexing profile: 1. default  2. bulk load: ");
+        if (scanner.nextLine().trim().equals("2")) {
+            BulkLoadProfile bulkLoad = new BulkLoadProfile();
+            System.out.print("RAM buffer in MB (Enter for " + bulkLoad.getRamBufferMB() + "): ");
+            String ramBuffer = scanner.nextLine().trim();
+            if (!ramBuffer.isEmpty()) {
+                bulkLoad.setRamBufferMB(Double.parseDouble(ramBuffer));
+            }
+            System.out.print("Merge threads (Enter for " + bulkLoad.getMergeThreads() + "): ");
+            String mergeThreads = scanner.nextLine().trim();
+            if (!mergeThreads.isEmpty()) {
+                int merges = Integer.parseInt(mergeThreads);
+                bulkLoad.setMergeThreads(merges, merges + 5);
+            }
+            System.out.print("Force merge to how many segments at the end (Enter to skip): ");
+            String segments = scanner.nextLine().trim();
+            if (!segments.isEmpty()) {
+                bulkLoad.setForceMergeSegments(Integer.parseInt(segments));
+            }
+            options.setBulkLoadProfile(bulkLoad);
+        }
+        return options;
     }
 
     /**
@@ -116,48 +331,97 @@ public class Facetery {
      * @throws ParseException If a query parsing error occurs.
      */
     public void searchWithFacets(String indexPath, String taxoPath) throws IOException, ParseException {
-        Directory indexDir = FSDirectory.open(Paths.get(indexPath));
-        Directory taxoDir = FSDirectory.open(Paths.get(taxoPath));
-        DirectoryReader indexReader = DirectoryReader.open(indexDir);
-        TaxonomyReader taxoReader = new DirectoryTaxonomyReader(taxoDir);
-
-        IndexSearcher searcher = new IndexSearcher(indexReader);
+        // the shared, warm searcher serves this instance's index; other paths get a service of their own
+        boolean shared = indexPath.equals(this.indexPath) && taxoPath.equals(this.taxoPath);
+        SearchService service = shared ? getSearchService() : new SearchService(indexPath, taxoPath, 0);
         Scanner scanner = new Scanner(System.in);
         int choice;
 
-        //queries: normal; numeric; sorted
-        while (true) {
-            System.out.println("Choose a query to search, press 0 to exit. ");
-            System.out.println("1. word query");
-            System.out.println("2. numeric query");
-            System.out.println("3. boolean query");
-            System.out.print("Enter your choice: ");
-            choice = Integer.parseInt(scanner.nextLine());
+        try {
+            //queries: normal; numeric; sorted
+            while (true) {
+                System.out.println("Choose a query to search, press 0 to exit. ");
+                System.out.println("1. word query");
+                System.out.println("2. numeric query");
+                System.out.println("3. boolean query");
+                System.out.println("4. similar reviews");
+                System.out.print("Enter your choice: ");
+                choice = Integer.parseInt(scanner.nextLine());
+
+                if (choice == 0) {
+                    System.out.println("Exiting queries...");
+                    break; // Exit the loop
+                }
 
-            if (choice == 0) {
-                System.out.println("Exiting queries...");
-                break; // Exit the loop
-            }
-            switch (choice) {
-                case 1:
-                    // word query
-                    executeQuery(searcher,taxoReader,scanner);
-                    break;
-                case 2:
-                    //numeric query
-                    executeNumericQuery(searcher,taxoReader,scanner);
-                    break;
-                case 3:
-                    //sorted query
-                    executeBooleanQuery(searcher,taxoReader,scanner);
+                // each query gets the latest searcher; it stays usable until released, even if a refresh happens
+                SearcherAndTaxonomy current;
+                try {
+                    current = service.acquire();
+                } catch (IllegalStateException e) {
+                    System.out.println(e.getMessage());
                     break;
+                }
+                try {
+                    schema = service.getSchema(current); // the schema of the commit this searcher reads
+                    IndexSearcher searcher = current.searcher;
+                    TaxonomyReader taxoReader = current.taxonomyReader;
+                    switch (choice) {
+                        case 1:
+                            // word query
+                            executeQuery(searcher,taxoReader,scanner);
+                            break;
+                        case 2:
+                            //numeric query
+                            executeNumericQuery(searcher,taxoReader,scanner);
+                            break;
+                        case 3:
+                            //sorted query
+                            executeBooleanQuery(searcher,taxoReader,scanner);
+                            break;
+                        case 4:
+                            //nearest review vectors
+                            executeSimilarQuery(searcher,scanner);
+                            break;
+                    }
+                } finally {
+                    service.release(current);
+                }
+            }
+        } finally {
+            System.out.println(facetCache);
+            if (!shared) {
+                service.close();
+                facetCache.clear(); // the entries of a closed reader can never be hit again
             }
         }
+    }
 
-
-            indexReader.close();
-            taxoReader.close();
+    /**
+     * Finds the reviews whose vectors are nearest to the vector of a text.
+     *
+     * @param searcher The IndexSearcher instance.
+     * @param scanner Scanner for user input.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void executeSimilarQuery(IndexSearcher searcher, Scanner scanner) throws IOException {
+        if (!schema.hasReviewVectors()) {
+            System.out.println("This index has no review vectors; rebuild it with them to find similar reviews.");
+            return;
         }
+        System.out.println("Enter a review text: ");
+        Query query = new ReviewVectors(schema.getReviewVectorDimension()).query(scanner.nextLine(), RESULTS_PER_PAGE, null);
+        if (query == null) {
+            System.out.println("The text has no words to compare.");
+            return;
+        }
+        ScoreDoc[] hits = searcher.search(query, RESULTS_PER_PAGE).scoreDocs;
+        Document[] docs = new ResultProjection(searcher, schema, "asin", "overall", "year", "month").documents(hits);
+        for (int i = 0; i < hits.length; i++) {
+            // the score of unit vectors is (1 + cosine) / 2
+            System.out.printf("%s | %s | %s-%s | cosine %.2f%n", docs[i].get("asin"), docs[i].get("overall"),
+                    docs[i].get("year"), docs[i].get("month"), 2 * hits[i].score - 1);
+        }
+    }
 
     /**
      * Executes a query on the specified field and displays facet results.
@@ -171,98 +435,43 @@ public class Facetery {
         public void executeQuery(IndexSearcher searcher, TaxonomyReader taxoReader,Scanner scanner) throws ParseException, IOException {//Query query = new MatchAllDocsQuery();
 
         //example: "world" in summary, "world" in reviewText
-            System.out.println("Choose field to be queried (reviewText, summary): ");
+            System.out.println("Choose field to be queried (reviewText, summary, everything): ");
             String field = scanner.nextLine();
 
             System.out.println("Enter your query string: ");
             String queryString = scanner.nextLine();
 
-            QueryParser parser = new QueryParser(field, new EnglishAnalyzer());
+            // fields are analyzed as they were indexed; "everything" is expanded if the index has no such field
+            QueryParser parser = schema.queryParser(field, Indexer.createAnalyzer());
             Query query = parser.parse(queryString);
 
-            FacetsCollector facetsCollector = new FacetsCollector();
-            FacetsCollector.search(searcher, query, 10, facetsCollector);
-
-
             //for each assigned category (asin, date, overall) give label and how many are in that group
-            Facets facetas = new FastTaxonomyFacetCounts(taxoReader, Indexer.getFconfig(), facetsCollector); //count of each facet
-            List<FacetResult> TodasDims = facetas.getAllDims(100);
+            FacetSampler.Counts counts = facetCache.getCounts(searcher, taxoReader, schema, query, QUERY_FACETS, facetSampler); //count of each facet
+            if (counts.isSampled()) {
+                System.out.println(counts);
+            }
+            List<FacetResult> TodasDims = counts.getDims();
             System.out.println("Total number of categories " + TodasDims.size());
             for (FacetResult fr : TodasDims) {
                 System.out.println("category: " + fr.dim);
                 for (LabelAndValue lv : fr.labelValues) {
-                    System.out.println(lv.label + "(" + lv.value + ")");
+                    System.out.println(lv.label + "(" + counts.format(lv) + ")");
                 }
             }
-            // Drill Down
-            while (true) {
-                System.out.println("To drill down, choose a category; to exit, press 0: ");
-                System.out.println("1.asin\n2.date\n3.overall");
-                int cat = Integer.parseInt(scanner.nextLine());
-
-                if (cat==0) {
-                    System.out.println("Exiting drilling...");
-                    break; // Exit the loop
+            // a highlighted snippet of each result instead of the whole review
+            ResultProjection projection = new ResultProjection(searcher, schema, "asin", "overall", "year", "month");
+            HitPrinter snippetPrinter = hits -> {
+                // the terms to highlight come from the user's query, not from the facet filters
+                String[] snippets = new ReviewSnippets(searcher, Indexer.createAnalyzer()).snippets(field, query, hits);
+                Document[] docs = projection.documents(hits.scoreDocs);
+                for (int i = 0; i < snippets.length; i++) {
+                    System.out.println(docs[i].get("asin") + " | " + docs[i].get("overall") + " | " + docs[i].get("year") + "-" + docs[i].get("month"));
+                    System.out.println(ReviewSnippets.snippetField(field) + ": " + snippets[i]);
                 }
-
-                DrillDownQuery drillDownQuery = new DrillDownQuery(new FacetsConfig(), query);
-
-                if (cat==1) {
-                    System.out.println("Enter asin: ");
-                    String asin = scanner.nextLine();
-                    drillDownQuery.add("asin", asin);
-                } else if (cat==2) {
-                    System.out.println("Enter year: ");
-                    String year = scanner.nextLine();
-                    drillDownQuery.add("date", year);
-
-                    while (true) { // Loop for navigating through months and beyond
-                        // Perform search and collect facets
-                        FacetsCollector facetsCollector2 = new FacetsCollector();
-                        TopDocs drillDownDocs = FacetsCollector.search(searcher, drillDownQuery, 10, facetsCollector2);
-
-                        // Retrieve facets for child categories (e.g., months)
-                        Facets categoryFacets = new FastTaxonomyFacetCounts(taxoReader, Indexer.getFconfig(), facetsCollector2);
-                        FacetResult categoryResult = categoryFacets.getTopChildren(10, "date", year);
-
-                        if (categoryResult != null && categoryResult.labelValues.length > 0) {
-                            System.out.println("Child categories under year " + year + ":");
-                            for (LabelAndValue lv : categoryResult.labelValues) {
-                                System.out.println("Month: " + lv.label + "(" + lv.value+")");
-                            }
-
-                            System.out.println("Enter a month to drill down further or press Enter to display results: ");
-                            String month = scanner.nextLine();
-
-                            if (month.isEmpty()) {
-                                break; // Exit the inner loop to display results
-                            }
-
-                            // Add the selected month to the drill-down query
-                            drillDownQuery.add("date", year + "/" + month);
-
-                                break; // Exit to display results
-
-                        } else {
-                            System.out.println("No child facets found under the selected category.");
-                            break;
-                        }
-                    }
-                } else if (cat==3) {
-                    System.out.println("Enter specific rating: ");
-                    Double rating = scanner.nextDouble();
-                    scanner.nextLine(); // Consume newline
-                    drillDownQuery.add("overall", String.valueOf(rating));
-                }
-
-                // Perform search and display results
-                TopDocs drillDownDocs = searcher.search(drillDownQuery, 10);
-                System.out.println("Drill Down Results: " + drillDownDocs.totalHits);
-                for (ScoreDoc hit : drillDownDocs.scoreDocs) {
-                    Document doc = searcher.doc(hit.doc);
-                    System.out.println(field + ": " + doc.get(field));
-                }
-            }
+            };
+            browseResults(searcher, query, scanner, snippetPrinter);
+            // Drill Down
+            drillDown(searcher, taxoReader, query, scanner, snippetPrinter);
 
 
         }
@@ -278,27 +487,47 @@ public class Facetery {
         public void executeNumericQuery(IndexSearcher searcher, TaxonomyReader taxoReader,Scanner scanner) throws IOException {
             System.out.print("Search for good (3-5) and bad (1-2) overall rating on a certain product: ");
             String asinNr = scanner.nextLine();
-
-            Query query = new TermQuery(new Term("asin", asinNr));
-            FacetsCollector facetsCollector = new FacetsCollector();
-            FacetsCollector.search(searcher, query, 10, facetsCollector);
-
-            Facets rangeFacets = new LongRangeFacetCounts(
-                    "overall", facetsCollector,
-                    new LongRange("good", (long) 3.0, true, (long)5.0, true),
-                    new LongRange("bad", (long)0.0, true, (long)2.0, true)
-            );
+            System.out.print("Rating ranges instead (e.g. low:1-2.5,high:3-5; Enter for good and bad): ");
+            String rangeSpec = scanner.nextLine().trim();
+            RatingFacets ratingRanges;
+            try {
+                ratingRanges = rangeSpec.isEmpty() ? RatingFacets.goodAndBad() : RatingFacets.parse(rangeSpec);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage() + ", using good and bad.");
+                ratingRanges = RatingFacets.goodAndBad();
+            }
+            RatingFacets ranges = ratingRanges;
+
+            // good and bad are summarized from doc values per segment, no search needed; other ranges and
+            // indexes without the summaries are counted from the hits
+            ProductSummary summary = rangeSpec.isEmpty() ? productSummaries.get(searcher.getIndexReader(), schema, asinNr) : null;
+            List<FacetResult> counts;
+            if (summary != null) {
+                counts = new ArrayList<>();
+                counts.add(summary.rangeCounts());
+                counts.addAll(summary.toFacetResults());
+            } else {
+                Query query = new TermQuery(new Term("asin", asinNr));
+                // the ranges and the categories are counted from the same hits, so they are cached together
+                counts = facetCache.get(searcher, query, Map.of(), "overallRanges" + ranges + "+facets:" + PRODUCT_FACETS, () -> {
+                    FacetsCollector facetsCollector = FacetedSearch.search(searcher, query, 10).getFacetsCollector();
+                    // one pass over the rating doc values of the hits
+                    Facets rangeFacets = ranges.counts(facetsCollector, schema);
+                    List<FacetResult> results = new ArrayList<>();
+                    results.add(rangeFacets.getAllChildren("overall"));
+                    results.addAll(PRODUCT_FACETS.count(searcher, taxoReader, Indexer.getFconfig(), facetsCollector, schema));
+                    return results;
+                });
+            }
 
         System.out.println("overall Ranges:");
-        for (LabelAndValue lv : rangeFacets.getTopChildren(10, "overall").labelValues) {
+        for (LabelAndValue lv : counts.get(0).labelValues) {
             System.out.println(lv.label + ": " + lv.value);
         }
             //for each assigned category ( date, overall) give label and how many are in that group
-            Facets facetas = new FastTaxonomyFacetCounts(taxoReader, Indexer.getFconfig(), facetsCollector); //count of each facet
-            List<FacetResult> TodasDims = facetas.getAllDims(100);
-            System.out.println("Total number of categories " + (TodasDims.size()-1));
+            List<FacetResult> TodasDims = counts.subList(1, counts.size());
+            System.out.println("Total number of categories " + TodasDims.size());
             for (FacetResult fr : TodasDims) {
-                if(fr.dim.equals("asin")){continue;}
                 System.out.println("category: " + fr.dim);
                 for (LabelAndValue lv : fr.labelValues) {
                     System.out.println(lv.label + "(" + lv.value + ")");
@@ -313,9 +542,10 @@ public class Facetery {
      * @param searcher The IndexSearcher instance.
      * @param taxoReader The TaxonomyReader instance.
      * @param scanner Scanner for user input.
+     * @throws ParseException If a search term cannot be analyzed.
      * @throws IOException If an I/O error occurs.
      */
-    public void executeBooleanQuery(IndexSearcher searcher, TaxonomyReader taxoReader, Scanner scanner) throws IOException {
+    public void executeBooleanQuery(IndexSearcher searcher, TaxonomyReader taxoReader, Scanner scanner) throws ParseException, IOException {
         // Input for the first query
         System.out.println("Enter field for first query: ");
         String f1 = scanner.nextLine();
@@ -328,8 +558,8 @@ public class Facetery {
         System.out.println("Enter search term (enter numeric double value for field 'overall'): ");
         String t2 = scanner.nextLine();
 
-        Query query1 = createFieldQuery(f1, t1);
-        Query query2 = createFieldQuery(f2, t2);
+        Query query1 = createFieldQuery(schema, f1, t1);
+        Query query2 = createFieldQuery(schema, f2, t2);
 
         // Choose boolean query mode
         System.out.println("Enter your choice: 1. Both should appear\n 2. Query 1 can be optional\n 3. Query 2 can be optional");
@@ -356,21 +586,50 @@ public class Facetery {
         }
 
         BooleanQuery booleanQuery = bQbuilder.build();
-        FacetsCollector facetsCollector = new FacetsCollector();
-        FacetsCollector.search(searcher, booleanQuery, 10, facetsCollector);
 
         // Display facets
-        Facets facetas = new FastTaxonomyFacetCounts(taxoReader, Indexer.getFconfig(), facetsCollector);
-        List<FacetResult> TodasDims = facetas.getAllDims(100);
+        FacetSampler.Counts counts = facetCache.getCounts(searcher, taxoReader, schema, booleanQuery, QUERY_FACETS, facetSampler);
+        if (counts.isSampled()) {
+            System.out.println(counts);
+        }
+        List<FacetResult> TodasDims = counts.getDims();
         System.out.println("Total number of categories: " + TodasDims.size());
         for (FacetResult fr : TodasDims) {
             System.out.println("Category: " + fr.dim);
             for (LabelAndValue lv : fr.labelValues) {
-                System.out.println(lv.label + " (" + lv.value + ")");
+                System.out.println(lv.label + " (" + counts.format(lv) + ")");
             }
         }
 
         // Drill Down Example
+        // only the two queried fields are loaded, from doc values when they are short ones
+        ResultProjection projection = new ResultProjection(searcher, schema, f1, f2);
+        HitPrinter fieldPrinter = hits -> {
+            for (Document doc : projection.documents(hits.scoreDocs)) {
+                System.out.println(f1 + ": " + doc.get(f1));
+                System.out.println(f2 + ": " + doc.get(f2));
+            }
+        };
+        browseResults(searcher, booleanQuery, scanner, fieldPrinter);
+        drillDown(searcher, taxoReader, booleanQuery, scanner, fieldPrinter);
+    }
+
+    /**
+     * Lets the user narrow the results of a query down by facet values. Selections add up,
+     * and each one runs a single DrillSideways search that returns the hits together with the
+     * counts of every dimension, including the other values of the dimensions already narrowed down.
+     *
+     * @param searcher The IndexSearcher instance.
+     * @param taxoReader The TaxonomyReader instance.
+     * @param query The query whose results are drilled into.
+     * @param scanner Scanner for user input.
+     * @param hitPrinter Prints the hits of each drill down.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void drillDown(IndexSearcher searcher, TaxonomyReader taxoReader, Query query, Scanner scanner,
+                           HitPrinter hitPrinter) throws IOException {
+        FacetDrillDown navigation = new FacetDrillDown(searcher, taxoReader, Indexer.getFconfig(), query)
+                .setCache(facetCache).setSchema(schema);
         while (true) {
             System.out.println("To drill down, choose a category; to exit, press 0: ");
             System.out.println("1.asin\n2.date\n3.overall");
@@ -381,77 +640,125 @@ public class Facetery {
                 break; // Exit the loop
             }
 
-            DrillDownQuery drillDownQuery = new DrillDownQuery(new FacetsConfig(), booleanQuery);
-
+            FacetDrillDown.Result result;
             if (cat==1) {
                 System.out.println("Enter asin: ");
                 String asin = scanner.nextLine();
-                drillDownQuery.add("asin", asin);
+                navigation.select("asin", asin);
+                result = navigation.search(10);
             } else if (cat==2) {
                 System.out.println("Enter year: ");
                 String year = scanner.nextLine();
-                drillDownQuery.add("date", year);
-
-                while (true) { // Loop for navigating through months and beyond
-                    // Perform search and collect facets
-                    FacetsCollector facetsCollector2 = new FacetsCollector();
-                    TopDocs drillDownDocs = FacetsCollector.search(searcher, drillDownQuery, 10, facetsCollector2);
-
-                    // Retrieve facets for child categories (e.g., months)
-                    Facets categoryFacets = new FastTaxonomyFacetCounts(taxoReader, Indexer.getFconfig(), facetsCollector2);
-                    FacetResult categoryResult = categoryFacets.getTopChildren(10, "date", year);
-
-                    if (categoryResult != null && categoryResult.labelValues.length > 0) {
-                        System.out.println("Child categories under year " + year + ":");
-                        for (LabelAndValue lv : categoryResult.labelValues) {
-                            System.out.println("Month: " + lv.label + "(" + lv.value+")");
-                        }
-
-                        System.out.println("Enter a month to drill down further or press Enter to display results: ");
-                        String month = scanner.nextLine();
-
-                        if (month.isEmpty()) {
-                            break; // Exit the inner loop to display results
-                        }
-
-                        // Add the selected month to the drill-down query
-                        drillDownQuery.add("date", year + "/" + month);
-
-                        break; // Exit to display results
+                navigation.select("date", year);
+                result = navigation.search(10);
+
+                // the months come with the hits of the year, no second search needed to list them
+                FacetResult categoryResult = navigation.childCounts(result, "date", 12);
+                if (categoryResult != null && categoryResult.labelValues.length > 0) {
+                    System.out.println("Child categories under year " + year + ":");
+                    for (LabelAndValue lv : categoryResult.labelValues) {
+                        System.out.println("Month: " + lv.label + "(" + lv.value+")");
+                    }
 
-                    } else {
-                        System.out.println("No child facets found under the selected category.");
-                        break;
+                    System.out.println("Enter a month to drill down further or press Enter to display results: ");
+                    String month = scanner.nextLine();
+                    if (!month.isEmpty()) {
+                        navigation.select("date", year, month);
+                        result = navigation.search(10);
                     }
+                } else {
+                    System.out.println("No child facets found under the selected category.");
                 }
             } else if (cat==3) {
                 System.out.println("Enter specific rating: ");
                 Double rating = scanner.nextDouble();
                 scanner.nextLine(); // Consume newline
-                drillDownQuery.add("overall", String.valueOf(rating));
+                if (rating < 1 || rating > ProductSummary.MAX_RATING) {
+                    System.out.println("Ratings go from 1 to " + ProductSummary.MAX_RATING + ". Please try again.");
+                    continue;
+                }
+                // with double ratings each star is a range, from the star up to the next one
+                navigation.select("overall", String.valueOf(schema.hasDoubleRatings() ? Math.floor(rating) : rating));
+                result = navigation.search(10);
+            } else {
+                System.out.println("Invalid choice. Please try again.");
+                continue;
             }
 
-            // Perform search and display results
-            TopDocs drillDownDocs = searcher.search(drillDownQuery, 10);
-            System.out.println("Drill Down Results: " + drillDownDocs.totalHits);
-            for (ScoreDoc hit : drillDownDocs.scoreDocs) {
-                Document doc = searcher.doc(hit.doc);
-                System.out.println(f1 + ": " + doc.get(f1));
-                System.out.println(f2 + ": " + doc.get(f2));
+            // counts of the narrowed down dimensions are sideways counts: the alternatives to the current selection
+            for (String dim : FacetDrillDown.DIMS) {
+                String[] selected = navigation.getSelections().get(dim);
+                FacetResult fr = navigation.childCounts(result, dim, 10);
+                System.out.println("category: " + dim + (selected == null ? "" : " (selected " + String.join("/", selected) + ")"));
+                if (fr != null) {
+                    for (LabelAndValue lv : fr.labelValues) {
+                        System.out.println(lv.label + "(" + lv.value + ")");
+                    }
+                }
+            }
+
+            System.out.println("Drill Down Results: " + result.hits.totalHits);
+            hitPrinter.print(result.hits);
+        }
+    }
+
+    /**
+     * Lists the hits of a query page by page, in the order the user picks. Each page continues
+     * after the last hit of the previous one, so going deep costs the same as the first page.
+     *
+     * @param searcher The IndexSearcher instance.
+     * @param query The query whose hits are listed.
+     * @param scanner Scanner for user input.
+     * @param hitPrinter Prints the hits of each page.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void browseResults(IndexSearcher searcher, Query query, Scanner scanner, HitPrinter hitPrinter) throws IOException {
+        System.out.print("List the results sorted by relevance, overall, date, asin or product? (Enter to skip): ");
+        ResultPager.SortMode mode = ResultPager.SortMode.parse(scanner.nextLine());
+        if (mode == null) {
+            return;
+        }
+        ResultPager pager = new ResultPager(searcher, schema, query, mode, RESULTS_PER_PAGE);
+        while (true) {
+            TopDocs page = pager.next();
+            System.out.println("Page " + Math.max(1, pager.getPage()) + " (" + page.scoreDocs.length + " results):");
+            hitPrinter.print(page);
+            if (!pager.hasNext()) {
+                System.out.println("No more results.");
+                break;
+            }
+            System.out.print("Press n for the next page, Enter to stop: ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("n")) {
+                break;
             }
         }
     }
+
+    /**
+     * Prints the hits of a drill down or a page of results.
+     */
+    @FunctionalInterface
+    private interface HitPrinter {
+        void print(TopDocs hits) throws IOException;
+    }
+
     /**
-     * Creates a query for the specified field and value.
+     * Creates a query for the specified field and value, as the boolean query builds them.
      *
+     * @param schema The schema of the searched index.
      * @param field The field to query.
      * @param value The value to search for in the field.
      * @return A Query instance for the specified field and value.
+     * @throws ParseException If the value cannot be analyzed for an expanded "everything" query.
      */
-    private Query createFieldQuery(String field, String value) {
+    static Query createFieldQuery(IndexSchema schema, String field, String value) throws ParseException {
         try {
             if (field.equals("overall")) {
                 return DoublePoint.newExactQuery(field, Double.parseDouble(value));
+            } else if (field.equals(IndexSchema.CATCH_ALL_FIELD) && !schema.hasCatchAllField()) {
+                // each real field analyzes the value the way it was indexed
+                Query expanded = new CatchAllQueryParser(field, Indexer.createAnalyzer()).catchAllQuery(value);
+                return expanded != null ? expanded : new MatchNoDocsQuery();
             } else {
                 return new TermQuery(new Term(field, value)); // Treat as text field by default
             }
@@ -0,0 +1,268 @@
+package org.example;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.queryparser.classic.QueryParser;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Describes what the indexer writes for every review, as opposed to {@link IndexingOptions}
+ * which only control how it gets there. The schema is saved in the commit user data of the
+ * index, so searchers build their queries for the index they actually open, and an
+ * incremental run keeps adding documents of the same shape.
+ */
+public class IndexSchema {
+
+    /** The catch-all field holding a second, tokenized copy of every review value. */
+    public static final String CATCH_ALL_FIELD = "everything";
+
+    /**
+     * The fields whose values go into the catch-all field, searched in its place when it is not indexed.
+     * Without it, reviewerName is tokenized and the day of the review date gets a field of its own.
+     */
+    static final String[] CATCH_ALL_SOURCES = {"reviewerID", "asin", "reviewerName", "reviewText", "overall", "summary", "year", "month", "day"};
+
+    static final String CATCH_ALL_KEY = "schema.catchAllField";
+    static final String TERM_VECTORS_KEY = "schema.termVectors";
+    static final String POSTINGS_OFFSETS_KEY = "schema.postingsOffsets";
+    static final String INDEX_SORT_KEY = "schema.indexSort";
+    static final String DOUBLE_RATINGS_KEY = "schema.doubleRatings";
+    static final String FACET_BACKEND_KEY = "schema.facetBackend";
+    static final String REVIEW_VECTORS_KEY = "schema.reviewVectors";
+
+    private boolean catchAllField = true;
+    private boolean termVectors = false;
+    private boolean postingsOffsets = true;
+    private ResultPager.SortMode indexSort;
+    private boolean doubleRatings = true;
+    private FacetBackend facetBackend = FacetBackend.TAXONOMY;
+    private int reviewVectorDimension;
+
+    /**
+     * Creates the default schema: the catch-all field is indexed, reviewText has
+     * offsets in its postings for highlighting but no term vectors, ratings are double
+     * doc values without a taxonomy facet, the other facets are in the taxonomy, reviews have
+     * no vectors, and the index is not sorted.
+     */
+    public IndexSchema() {
+    }
+
+    /**
+     * Restores a schema from commit user data. Options missing from the commit get the value
+     * indexes had before the option existed: a catch-all field, term vectors instead of
+     * postings offsets on reviewText, and ratings truncated to long doc values with a taxonomy facet.
+     *
+     * @param commitData the user data of an index commit, may be null.
+     * @return the schema of that commit.
+     */
+    public static IndexSchema fromCommitData(Iterable<Map.Entry<String, String>> commitData) {
+        IndexSchema schema = new IndexSchema().setTermVectors(true).setPostingsOffsets(false).setDoubleRatings(false);
+        if (commitData != null) {
+            for (Map.Entry<String, String> entry : commitData) {
+                switch (entry.getKey()) {
+                    case CATCH_ALL_KEY:
+                        schema.setCatchAllField(Boolean.parseBoolean(entry.getValue()));
+                        break;
+                    case TERM_VECTORS_KEY:
+                        schema.setTermVectors(Boolean.parseBoolean(entry.getValue()));
+                        break;
+                    case POSTINGS_OFFSETS_KEY:
+                        schema.setPostingsOffsets(Boolean.parseBoolean(entry.getValue()));
+                        break;
+                    case DOUBLE_RATINGS_KEY:
+                        schema.setDoubleRatings(Boolean.parseBoolean(entry.getValue()));
+                        break;
+                    case FACET_BACKEND_KEY:
+                        FacetBackend backend = FacetBackend.parse(entry.getValue());
+                        schema.setFacetBackend(backend == null ? FacetBackend.TAXONOMY : backend);
+                        break;
+                    case REVIEW_VECTORS_KEY:
+                        schema.setReviewVectors(Integer.parseInt(entry.getValue()));
+                        break;
+                    case INDEX_SORT_KEY:
+                        schema.setIndexSort(ResultPager.SortMode.parse(entry.getValue()));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Reads the schema of the commit a reader was opened on.
+     *
+     * @param reader the index reader.
+     * @return the schema the index was written with.
+     * @throws IOException if the commit cannot be read.
+     */
+    public static IndexSchema read(DirectoryReader reader) throws IOException {
+        return fromCommitData(reader.getIndexCommit().getUserData().entrySet());
+    }
+
+    /**
+     * Writes the schema into a commit user data map.
+     *
+     * @param commitData the map to add the entries to.
+     * @return the same map.
+     */
+    public Map<String, String> addTo(Map<String, String> commitData) {
+        commitData.put(CATCH_ALL_KEY, String.valueOf(catchAllField));
+        commitData.put(TERM_VECTORS_KEY, String.valueOf(termVectors));
+        commitData.put(POSTINGS_OFFSETS_KEY, String.valueOf(postingsOffsets));
+        commitData.put(DOUBLE_RATINGS_KEY, String.valueOf(doubleRatings));
+        commitData.put(FACET_BACKEND_KEY, facetBackend.name());
+        commitData.put(REVIEW_VECTORS_KEY, String.valueOf(reviewVectorDimension));
+        commitData.put(INDEX_SORT_KEY, indexSort == null ? "" : indexSort.name());
+        return commitData;
+    }
+
+    /**
+     * @return the schema as a new commit user data map.
+     */
+    public Map<String, String> toCommitData() {
+        return addTo(new HashMap<>());
+    }
+
+    /**
+     * Creates a query parser for this schema. Without a catch-all field in the index,
+     * "everything:" clauses are expanded over the fields it used to copy.
+     *
+     * @param defaultField the field searched by clauses without a field name.
+     * @param analyzer the analyzer for the query text, ideally the one the fields were indexed with.
+     * @return the query parser.
+     */
+    public QueryParser queryParser(String defaultField, Analyzer analyzer) {
+        return catchAllField ? new QueryParser(defaultField, analyzer) : new CatchAllQueryParser(defaultField, analyzer);
+    }
+
+    /**
+     * @param catchAllField true to copy every value into the "everything" field, false to
+     *                      search the real fields instead and save the extra analysis and postings;
+     *                      reviewerName is then tokenized and the day of the date indexed on its own.
+     * @return this instance.
+     */
+    public IndexSchema setCatchAllField(boolean catchAllField) {
+        this.catchAllField = catchAllField;
+        return this;
+    }
+
+    /**
+     * @param termVectors true to store term vectors for reviewText. Nothing in the application
+     *                    reads them, so they only cost index size and indexing time.
+     * @return this instance.
+     */
+    public IndexSchema setTermVectors(boolean termVectors) {
+        this.termVectors = termVectors;
+        return this;
+    }
+
+    /**
+     * @param postingsOffsets true to index the character offsets of reviewText terms in the
+     *                        postings, which lets the highlighter build snippets without
+     *                        re-analyzing the review text.
+     * @return this instance.
+     */
+    public IndexSchema setPostingsOffsets(boolean postingsOffsets) {
+        this.postingsOffsets = postingsOffsets;
+        return this;
+    }
+
+    /**
+     * Sorts the documents of every segment in the order of a {@link ResultPager} mode. Pages
+     * in that order then stop collecting once they are full, at the cost of sorting every
+     * flushed and merged segment. The sort of an existing index cannot be changed.
+     *
+     * @param indexSort the order, or null (or RELEVANCE) to keep documents in the order they are added.
+     * @return this instance.
+     */
+    public IndexSchema setIndexSort(ResultPager.SortMode indexSort) {
+        this.indexSort = indexSort == ResultPager.SortMode.RELEVANCE ? null : indexSort;
+        return this;
+    }
+
+    /**
+     * @param doubleRatings true to keep the rating as double doc values, counted with range
+     *                      facets (see {@link RatingFacets}); false for the old layout of
+     *                      long doc values truncating the rating plus a taxonomy facet.
+     * @return this instance.
+     */
+    public IndexSchema setDoubleRatings(boolean doubleRatings) {
+        this.doubleRatings = doubleRatings;
+        return this;
+    }
+
+    /**
+     * @param facetBackend where the asin, date and (with long ratings) overall facets are kept:
+     *                     the taxonomy index, or sorted set doc values of the index itself.
+     * @return this instance.
+     */
+    public IndexSchema setFacetBackend(FacetBackend facetBackend) {
+        this.facetBackend = facetBackend;
+        return this;
+    }
+
+    /**
+     * @param dimension the dimensions of the hashed word vector of reviewText indexed for
+     *                  nearest-neighbour search (see {@link ReviewVectors}), or 0 for no vectors.
+     * @return this instance.
+     */
+    public IndexSchema setReviewVectors(int dimension) {
+        if (dimension < 0) {
+            throw new IllegalArgumentException("dimension must not be negative");
+        }
+        this.reviewVectorDimension = dimension;
+        return this;
+    }
+
+    public boolean hasCatchAllField() {return catchAllField;}
+
+    public boolean hasTermVectors() {return termVectors;}
+
+    public boolean hasPostingsOffsets() {return postingsOffsets;}
+
+    public boolean hasDoubleRatings() {return doubleRatings;}
+
+    public FacetBackend getFacetBackend() {return facetBackend;}
+
+    public boolean hasReviewVectors() {return reviewVectorDimension > 0;}
+
+    /** @return the dimensions of the review vectors, 0 if reviews have none. */
+    public int getReviewVectorDimension() {return reviewVectorDimension;}
+
+    /** @return the order of the documents in the index, or null if they are not sorted. */
+    public ResultPager.SortMode getIndexSort() {return indexSort;}
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof IndexSchema)) {
+            return false;
+        }
+        IndexSchema other = (IndexSchema) o;
+        return other.catchAllField == catchAllField && other.termVectors == termVectors
+                && other.postingsOffsets == postingsOffsets && other.indexSort == indexSort
+                && other.doubleRatings == doubleRatings && other.facetBackend == facetBackend
+                && other.reviewVectorDimension == reviewVectorDimension;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(catchAllField, termVectors, postingsOffsets, indexSort, doubleRatings, facetBackend, reviewVectorDimension);
+    }
+
+    @Override
+    public String toString() {
+        return (catchAllField ? "catch-all field" : "no catch-all field")
+                + (termVectors ? ", term vectors" : "")
+                + (postingsOffsets ? ", postings offsets" : "")
+                + (doubleRatings ? ", double ratings" : ", long ratings")
+                + (facetBackend == FacetBackend.SORTED_SET ? ", sorted set facets" : ", taxonomy facets")
+                + (reviewVectorDimension > 0 ? ", " + reviewVectorDimension + "-dimension review vectors" : "")
+                + (indexSort != null ? ", sorted by " + indexSort.name().toLowerCase() : "");
+    }
+}
@@ -5,11 +5,14 @@ import org.apache.lucene.analysis.core.KeywordAnalyzer;
 import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.facet.FacetField;
 import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.search.similarities.ClassicSimilarity;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.Directory;
@@ -17,18 +20,21 @@ import org.apache.lucene.store.FSDirectory;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.lucene.document.*;
-import org.apache.lucene.index.IndexOptions;
-import org.apache.lucene.util.BytesRef;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
 
 /**
  * Class responsible for indexing review documents with faceted search support.
@@ -41,6 +47,34 @@ public class Indexer {
         private String taxoPath;
         private IndexWriter indexWriter;
         private DirectoryTaxonomyWriter taxoWriter;
+        private IngestionLedger ledger = new IngestionLedger();
+        private IndexingOptions options = new IndexingOptions();
+        private IndexSchema schema = new IndexSchema();
+        // true when continuing a run that stopped before its final commit
+        private boolean resuming;
+
+        // commits take the write lock so no document is half-way between taxonomy and index
+        private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+        private final AtomicBoolean committing = new AtomicBoolean();
+        private final AtomicLong docsSinceCommit = new AtomicLong();
+        private volatile long lastCommitNanos = System.nanoTime();
+        private volatile String checkpointFile = "";
+        private volatile long checkpointLine;
+        // false while documents past the ledger position of a file are indexed, e.g. by out-of-order batches
+        private volatile BooleanSupplier ledgerComplete = () -> true;
+        // true while the sequential path adds the reviews of a line it has not recorded yet
+        private volatile boolean lineInProgress;
+
+        // commit user data describing the run that wrote the commit
+        static final String RUN_STATE = "run.state";
+        static final String RUN_IN_PROGRESS = "in-progress";
+        static final String RUN_COMPLETE = "complete";
+        static final String CHECKPOINT_FILE = "checkpoint.file";
+        static final String CHECKPOINT_LINE = "checkpoint.line";
+        // segments per merge tier of a sorted index, down from TieredMergePolicy's 10
+        private static final int SORTED_SEGMENTS_PER_TIER = 4;
+        // one reusable document builder per indexing thread
+        private final ThreadLocal<ReviewDocumentBuilder> documentBuilders = ThreadLocal.withInitial(() -> new ReviewDocumentBuilder(schema));
         private static FacetsConfig fconfig;
 
     /**
@@ -59,11 +93,61 @@ public class Indexer {
      * @param taxoPath the directory where the taxonomy index will be stored.
      */
         public static void executeIndexer(String filePath, String indexPath, String taxoPath) {
+            executeIndexer(filePath, indexPath, taxoPath, new IndexingOptions());
+        }
+
+    /**
+     * Executes the indexing process with the given runtime options, e.g. to use the
+     * parallel ingestion pipeline instead of indexing on the calling thread.
+     *
+     * @param filePath the directory containing review JSON files.
+     * @param indexPath the directory where the index will be stored.
+     * @param taxoPath the directory where the taxonomy index will be stored.
+     * @param options the options for this indexing run.
+     */
+        public static void executeIndexer(String filePath, String indexPath, String taxoPath, IndexingOptions options) {
+            executeIndexer(filePath, indexPath, taxoPath, options, new IndexSchema());
+        }
+
+    /**
+     * Executes the indexing process with the given runtime options and index schema.
+     * When adding to an existing index, the schema that index was built with is kept.
+     *
+     * @param filePath the directory containing review JSON files.
+     * @param indexPath the directory where the index will be stored.
+     * @param taxoPath the directory where the taxonomy index will be stored.
+     * @param options the options for this indexing run.
+     * @param schema the fields to write for new indexes.
+     */
+        public static void executeIndexer(String filePath, String indexPath, String taxoPath, IndexingOptions options, IndexSchema schema) {
             Indexer baseline = new Indexer(filePath, indexPath, taxoPath);
+            baseline.setOptions(options);
+            baseline.setSchema(schema);
 
             //initialize all analyzers/similarities that we need
-            Analyzer stAna = new StandardAnalyzer();
             Similarity similarity = new ClassicSimilarity();
+            PerFieldAnalyzerWrapper perFieldAnalyzer = createAnalyzer();
+
+            // only a run that indexed every file is marked complete; a failed one stays resumable
+            boolean complete = false;
+            try {
+                baseline.configurarIndice(perFieldAnalyzer, similarity);
+                    baseline.indexarReviews();// Index review documents
+                complete = true;
+            } catch (IOException e) {
+                System.err.println("Error configuring or indexing documents: " + e.getMessage());
+            } finally {
+                baseline.close(complete);
+            }
+        }
+
+    /**
+     * Creates the per-field analyzer used to index the review fields.
+     *
+     * @return the analyzer mapping each field to its analysis chain.
+     */
+        public static PerFieldAnalyzerWrapper createAnalyzer() {
+            Analyzer stAna = new StandardAnalyzer();
             Analyzer keywordAnalyzer = new KeywordAnalyzer();   // For non-tokenized fields
             Analyzer englishAnalyzer = new EnglishAnalyzer();   // For English-language text fields
 
@@ -76,16 +160,7 @@ public class Indexer {
             mappedAnalyzers.put("reviewText", englishAnalyzer);
             mappedAnalyzers.put("summary", stAna);
 
-            PerFieldAnalyzerWrapper perFieldAnalyzer = new PerFieldAnalyzerWrapper(stAna, mappedAnalyzers);
-
-            try {
-                baseline.configurarIndice(perFieldAnalyzer, similarity);
-                    baseline.indexarReviews();// Index review documents
-            } catch (IOException e) {
-                System.err.println("Error configuring or indexing documents: " + e.getMessage());
-            } finally {
-                baseline.close();
-            }
+            return new PerFieldAnalyzerWrapper(stAna, mappedAnalyzers);
         }
 
     /**
@@ -107,6 +182,47 @@ public class Indexer {
             fconfig.setMultiValued("asin",false);
         }
 
+    /**
+     * Sets the runtime options used by {@link #indexarReviews()}.
+     *
+     * @param options the options for this indexing run.
+     */
+        public void setOptions(IndexingOptions options) {
+            this.options = options;
+        }
+
+    /**
+     * Sets the schema of the index, i.e. which fields are written for every review.
+     * Must be called before {@link #configurarIndice}; an existing index opened for
+     * appending keeps its own schema.
+     *
+     * @param schema the index schema.
+     */
+        public void setSchema(IndexSchema schema) {
+            this.schema = schema;
+        }
+
+    /**
+     * @return the IndexWriter, for near-real-time search while indexing; null before {@link #configurarIndice}.
+     */
+        IndexWriter getIndexWriter() {
+            return indexWriter;
+        }
+
+    /**
+     * @return the taxonomy writer, for near-real-time search while indexing; null before {@link #configurarIndice}.
+     */
+        DirectoryTaxonomyWriter getTaxoWriter() {
+            return taxoWriter;
+        }
+
+    /**
+     * @return the schema the documents are written with.
+     */
+        public IndexSchema getSchema() {
+            return schema;
+        }
+
     /**
      * Configures the index with the specified analyzer and similarity settings.
      *
@@ -118,30 +234,92 @@ public class Indexer {
             //indexwriterconfig
             IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
             iwc.setSimilarity(similarity);
-            iwc.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
-
+            if (options.getBulkLoadProfile() != null) {
+                options.getBulkLoadProfile().apply(iwc);
+            }
             Directory indexDir = FSDirectory.open(Paths.get(indexPath));
             Directory taxoDir = FSDirectory.open(Paths.get(taxoPath));
 
+            // a run whose last commit is a checkpoint was interrupted and continues where it stopped
+            resuming = false;
+            boolean indexExists = DirectoryReader.indexExists(indexDir);
+            Map<String, String> lastCommit = indexExists ? SegmentInfos.readLatestCommit(indexDir).getUserData() : Map.of();
+            if (RUN_IN_PROGRESS.equals(lastCommit.get(RUN_STATE))) {
+                resuming = true;
+                System.out.println("Resuming interrupted indexing run after " + lastCommit.get(CHECKPOINT_FILE)
+                        + " line " + lastCommit.get(CHECKPOINT_LINE));
+            }
+
+            // incremental runs add to the existing index and taxonomy instead of rebuilding them
+            IndexWriterConfig.OpenMode openMode = options.isIncremental() || resuming
+                    ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND
+                    : IndexWriterConfig.OpenMode.CREATE;
+            iwc.setOpenMode(openMode);
+
+            // documents added to an existing index must have the same fields, and sort, as the ones already in it
+            if (openMode == IndexWriterConfig.OpenMode.CREATE_OR_APPEND && indexExists) {
+                IndexSchema existing = IndexSchema.fromCommitData(lastCommit.entrySet());
+                if (!existing.equals(schema)) {
+                    System.out.println("Keeping the schema of the existing index: " + existing);
+                }
+                schema = existing;
+            }
+            if (schema.getIndexSort() != null) {
+                iwc.setIndexSort(schema.getIndexSort().sort(schema));
+                // every merge keeps the sort; merging sooner keeps each product in fewer, longer runs of documents
+                if (iwc.getMergePolicy() instanceof TieredMergePolicy) {
+                    TieredMergePolicy mergePolicy = (TieredMergePolicy) iwc.getMergePolicy();
+                    mergePolicy.setSegmentsPerTier(Math.min(mergePolicy.getSegmentsPerTier(), SORTED_SEGMENTS_PER_TIER));
+                }
+            }
+
+            if (schema.hasReviewVectors()) {
+                iwc.setCodec(ReviewVectors.codec(options.getHnswMaxConn(), options.getHnswBeamWidth()));
+            }
+
             indexWriter = new IndexWriter(indexDir, iwc);
-            taxoWriter = new DirectoryTaxonomyWriter(taxoDir);
+            taxoWriter = new DirectoryTaxonomyWriter(taxoDir, openMode);
+
+            // the files and offsets already indexed, as recorded with the last commit
+            ledger = openMode == IndexWriterConfig.OpenMode.CREATE_OR_APPEND
+                    ? IngestionLedger.fromCommitData(indexWriter.getLiveCommitData())
+                    : new IngestionLedger();
+            lastCommitNanos = System.nanoTime();
 
         }
 
     /**
-     * Indexes review documents from JSON files in the specified filePath.
+     * Indexes review documents from JSON files in the specified filePath,
+     * either sequentially or through the {@link ParallelIngestion} pipeline.
+     *
+     * @throws IOException if a file cannot be read, holds a line that is not valid JSON, or
+     *                     cannot be indexed; the files and lines before it stay recorded in the ledger.
      */
-    public void indexarReviews() {
+    public void indexarReviews() throws IOException {
         ObjectMapper mapper = new ObjectMapper();
-        int totalReviewCount = 0;
+        long totalReviewCount = 0;
 
+        List<Path> reviewFiles = new ArrayList<>();
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(filePath), "*.json")) {
             for (Path jsonFilePath : stream) {
-                System.out.println("Indexing document "+jsonFilePath.toString());
-                totalReviewCount += parseAndIndexReviews(jsonFilePath.toString(), mapper);
+                reviewFiles.add(jsonFilePath);
+            }
+        }
+
+        if (options.isParallel()) {
+            totalReviewCount = new ParallelIngestion(this, options).run(reviewFiles);
+        } else {
+            // a line that fails half-way leaves documents past the ledger, so the run rolls back instead of checkpointing
+            setLedgerCondition(() -> !lineInProgress);
+            StreamingReviewParser streamingParser = new StreamingReviewParser();
+            for (Path jsonFilePath : reviewFiles) {
+                System.out.println("Indexing document " + jsonFilePath.toString());
+                if (options.isStreamingParser()) {
+                    totalReviewCount += streamAndIndexReviews(jsonFilePath, streamingParser);
+                } else {
+                    totalReviewCount += parseAndIndexReviews(jsonFilePath.toString(), mapper);
+                }
             }
-        } catch (IOException e) {
-            System.err.println("Error reading review files in directory: " + e.getMessage());
         }
 
         System.out.println("Total number of reviews indexed: " + totalReviewCount);
@@ -157,17 +335,29 @@ public class Indexer {
      */
     public int parseAndIndexReviews(String reviewFilePath, ObjectMapper mapper) throws IOException {
         int reviewCount = 0;
+        ReviewRecord review = new ReviewRecord();
+        Path reviewFile = Paths.get(reviewFilePath);
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(reviewFilePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                for(JsonNode reviewNode : mapper.readTree(line)){
-                    indexReviewDocument(reviewNode, this.indexWriter);
+        try (ReviewLineReader reader = openForIngestion(reviewFile)) {
+            if (reader == null) {
+                return 0;
+            }
+            while (reader.next()) {
+                if (reader.isBlank()) {
+                    continue;
+                }
+                JsonNode lineNode = mapper.readTree(reader.lineBytes(), 0, reader.lineLength());
+                // a line holds either an array of reviews or a single review
+                lineInProgress = true;
+                for (JsonNode reviewNode : lineNode.isArray() ? lineNode : List.of(lineNode)) {
+                    indexReviewDocument(review.copyFrom(reviewNode), this.indexWriter);
                     reviewCount++;
                 }
+                lineInProgress = false;
+                linesIndexed(reviewFile, reader.lineNumber(), reader.offset());
             }
         } catch (IOException e) {
-            System.err.println("Error reading JSON file: " + e.getMessage());
+            throw new IOException("Error reading JSON file " + reviewFile + ": " + e.getMessage(), e);
         }
 
         System.out.println("Indexed " + reviewCount + " reviews from " + reviewFilePath);
@@ -175,82 +365,259 @@ public class Indexer {
     }
 
     /**
-     * Indexes a single review document into the index.
+     * Parses and indexes reviews from a single JSON file with the streaming parser,
+     * which copies only the indexed fields instead of building a JSON tree per line.
      *
-     * @param reviewNode the JSON node representing a review.
-     * @param writer the IndexWriter for adding documents to the index.
-     * @throws IOException if an error occurs while indexing the document.
+     * @param reviewFile the JSON file containing reviews.
+     * @param parser the streaming parser; it is not thread-safe, so use one per thread.
+     * @return the number of reviews indexed.
+     * @throws IOException if an error occurs while reading or indexing reviews.
      */
-    private void indexReviewDocument(JsonNode reviewNode, IndexWriter writer) throws IOException {
-        Document doc = new Document();
-
-        String reviewerID = reviewNode.path("reviewerID").asText();
-        String asin = reviewNode.path("asin").asText();
-        String reviewerName = reviewNode.path("reviewerName").asText();
-        String reviewText = reviewNode.path("reviewText").asText();
-        Double overall = reviewNode.path("overall").asDouble();
-        String summary = reviewNode.path("summary").asText();
-        String cleanReviewTime = reviewNode.path("cleanReviewTime").asText();
-
-        doc.add(new TextField("everything", reviewerID, Field.Store.NO));
-        doc.add(new TextField("everything", asin, Field.Store.NO));
-        doc.add(new TextField("everything", reviewerName, Field.Store.NO));
-        doc.add(new TextField("everything", reviewText, Field.Store.NO));
-        doc.add(new TextField("everything", overall.toString(), Field.Store.NO));
-        doc.add(new TextField("everything", summary, Field.Store.NO));
-        doc.add(new TextField("everything", cleanReviewTime, Field.Store.NO));
-
-        if  (!reviewerID.isEmpty()) {
-            doc.add(new StringField("reviewerID", reviewerID, Field.Store.YES));
-        }
+    public long streamAndIndexReviews(Path reviewFile, StreamingReviewParser parser) throws IOException {
+        long reviewCount = 0;
 
-        // asin as a product identifier, stored and sortable
-        if (!asin.isEmpty()) {
-            doc.add(new StringField("asin", asin, Field.Store.YES));
-            doc.add(new SortedDocValuesField("asin", new BytesRef(asin)));  // For sorting or faceted search
-            doc.add(new FacetField("asin",asin));
+        try (ReviewLineReader reader = openForIngestion(reviewFile)) {
+            if (reader == null) {
+                return 0;
+            }
+            while (reader.next()) {
+                lineInProgress = true;
+                reviewCount += parser.parseLine(reader.lineBytes(), reader.lineLength(),
+                        review -> indexReviewDocument(review, this.indexWriter));
+                lineInProgress = false;
+                linesIndexed(reviewFile, reader.lineNumber(), reader.offset());
+            }
+        } catch (IOException e) {
+            throw new IOException("Error reading JSON file " + reviewFile + ": " + e.getMessage(), e);
         }
 
+        System.out.println("Indexed " + reviewCount + " reviews from " + reviewFile);
+        return reviewCount;
+    }
 
-        if (!reviewerName.isEmpty()) {
-            doc.add(new StringField("reviewerName", reviewerName , Field.Store.YES));
+    /**
+     * Opens a review file at the first byte that has not been indexed yet.
+     *
+     * @param reviewFile the review file.
+     * @return a reader positioned after the ingested part, or null if the whole file was already indexed.
+     * @throws IOException if the file cannot be opened.
+     */
+    ReviewLineReader openForIngestion(Path reviewFile) throws IOException {
+        long offset = ledger.resumeOffset(reviewFile);
+        if (offset > 0 && offset == Files.size(reviewFile)) {
+            System.out.println("Skipping " + reviewFile + ", already indexed");
+            return null;
+        }
+        if (offset > 0) {
+            System.out.println("Resuming " + reviewFile + " at byte " + offset);
         }
+        return new ReviewLineReader(reviewFile, offset, ledger.resumeLine(reviewFile));
+    }
+
+    /**
+     * Records that every review of a file up to the given line has been added to the writer,
+     * and commits if the commit policy says so. The checkpoint of that commit then points
+     * just after this line.
+     *
+     * @param reviewFile the review file.
+     * @param lineNumber the number of the last completed line in the file.
+     * @param offset the byte offset just after that line.
+     * @throws IOException if the commit fails.
+     */
+    void linesIndexed(Path reviewFile, long lineNumber, long offset) throws IOException {
+        markIngested(reviewFile, lineNumber, offset);
+        maybeCommit();
+    }
 
-        // reviewText - main review content, indexed with tokenization for search
-        if (!reviewText.isEmpty()) {
-            FieldType reviewTextType = new FieldType();
-            reviewTextType.setStored(true);
-            reviewTextType.setTokenized(true);
-            reviewTextType.setStoreTermVectors(true);  // Enable term vectors for potential phrase search or highlighting
-            reviewTextType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
-            doc.add(new Field("reviewText", reviewText, reviewTextType));
+    /**
+     * Records that every review of a file up to the given line has been added to the writer,
+     * without committing.
+     *
+     * @param reviewFile the review file.
+     * @param lineNumber the number of the last completed line in the file.
+     * @param offset the byte offset just after that line.
+     */
+    void markIngested(Path reviewFile, long lineNumber, long offset) {
+        ledger.markIngested(reviewFile, offset, lineNumber);
+        checkpointFile = reviewFile.toString();
+        checkpointLine = lineNumber;
+    }
+
+    /**
+     * Tells whether the documents added so far are exactly the ones the ledger records. A commit
+     * is only a checkpoint to resume from when they are; otherwise the next run would index the
+     * documents past the ledger again. The condition is evaluated while holding {@link #batchLock()}
+     * exclusively.
+     *
+     * @param ledgerComplete true when no document past the ledger position of a file was added.
+     */
+    void setLedgerCondition(BooleanSupplier ledgerComplete) {
+        this.ledgerComplete = ledgerComplete;
+    }
+
+    /**
+     * @return the lock to hold while adding a group of documents and recording them in the
+     *         ledger, so that a checkpoint commits either all of them or none.
+     */
+    Lock batchLock() {
+        return commitLock.readLock();
+    }
+
+    /**
+     * Commits the index and the taxonomy if the commit policy is due.
+     * Several indexing threads may call this; only one of them commits, waiting for
+     * the documents in flight on other threads to be added first.
+     *
+     * @throws IOException if the commit fails.
+     */
+    void maybeCommit() throws IOException {
+        CommitPolicy policy = options.getCommitPolicy();
+        if (policy.isAtEndOnly()
+                || !policy.isDue(docsSinceCommit.get(), indexWriter.ramBytesUsed(), System.nanoTime() - lastCommitNanos)
+                || !ledgerComplete.getAsBoolean()) {
+            return;
+        }
+        if (committing.compareAndSet(false, true)) {
+            try {
+                commitLock.writeLock().lock();
+                try {
+                    if (!ledgerComplete.getAsBoolean()) {
+                        return; // a batch finished ahead of an earlier one meanwhile, try again after the next one
+                    }
+                    commit(false);
+                    System.out.println(checkpointFile.isEmpty() ? "Checkpoint committed"
+                            : "Checkpoint committed after " + checkpointFile + " line " + checkpointLine);
+                } finally {
+                    commitLock.writeLock().unlock();
+                }
+            } finally {
+                committing.set(false);
+            }
         }
+    }
 
-        doc.add(new DoublePoint("overall", overall)); //for range queries
-        doc.add(new StoredField("overall",overall));
-        doc.add(new NumericDocValuesField("overall", overall.longValue())); //for range faceting
-        doc.add(new FacetField("overall", String.valueOf(overall))); //for categorical facets
+    /**
+     * Commits the taxonomy and then the index, with the ingestion ledger and the checkpoint
+     * in the index commit user data. The taxonomy goes first so that a committed index never
+     * refers to categories missing from the committed taxonomy.
+     *
+     * @param complete true for the final commit of the run, false for a checkpoint.
+     * @throws IOException if the commit fails.
+     */
+    private void commit(boolean complete) throws IOException {
+        commitLock.writeLock().lock();
+        try {
+            Map<String, String> commitData = schema.addTo(ledger.toCommitData());
+            commitData.put(RUN_STATE, complete ? RUN_COMPLETE : RUN_IN_PROGRESS);
+            commitData.put(CHECKPOINT_FILE, checkpointFile);
+            commitData.put(CHECKPOINT_LINE, String.valueOf(checkpointLine));
 
-        if(!summary.isEmpty()){
-            doc.add(new TextField("summary", summary, Field.Store.YES));
+            taxoWriter.commit();
+            indexWriter.setLiveCommitData(commitData.entrySet());
+            indexWriter.commit();
+
+            docsSinceCommit.set(0);
+            lastCommitNanos = System.nanoTime();
+        } finally {
+            commitLock.writeLock().unlock();
         }
+    }
 
-        doc.add(new StringField("year",cleanReviewTime.substring(0,4), Field.Store.YES));
-        doc.add(new StringField("month",cleanReviewTime.substring(5,7),Field.Store.YES));
-        doc.add(new FacetField("date",cleanReviewTime.substring(0,4),cleanReviewTime.substring(5,7)));
+    /**
+     * Indexes a single review through this indexer's IndexWriter.
+     * Safe to call from several threads, as used by {@link ParallelIngestion}.
+     *
+     * @param review the review to index.
+     * @throws IOException if an error occurs while indexing the document.
+     */
+    void indexReviewDocument(ReviewRecord review) throws IOException {
+        indexReviewDocument(review, this.indexWriter);
+    }
 
-        writer.addDocument(fconfig.build(taxoWriter,doc));
+    /**
+     * Indexes a single review document into the index, building it with the
+     * calling thread's reusable {@link ReviewDocumentBuilder}.
+     *
+     * @param review the review fields to index.
+     * @param writer the IndexWriter for adding documents to the index.
+     * @throws IOException if an error occurs while indexing the document.
+     */
+    private void indexReviewDocument(ReviewRecord review, IndexWriter writer) throws IOException {
+        ReviewDocumentBuilder builder = options.isReuseDocuments() ? documentBuilders.get() : new ReviewDocumentBuilder(schema);
+        Document doc = builder.build(review);
+        String reviewKey = builder.reviewKey();
+        commitLock.readLock().lock();
+        try {
+            if ((options.isIncremental() || resuming) && reviewKey != null) {
+                // replaces an earlier version of the same review, so re-ingesting a file is idempotent
+                writer.updateDocument(new Term(ReviewDocumentBuilder.REVIEW_KEY_FIELD, reviewKey),
+                        fconfig.build(taxoWriter,doc));
+            } else {
+                writer.addDocument(fconfig.build(taxoWriter,doc));
+            }
+        } finally {
+            commitLock.readLock().unlock();
+        }
+        docsSinceCommit.incrementAndGet();
     }
 
     /**
-     * Closes the index and taxonomy writers, committing any pending changes.
+     * Closes the index and taxonomy writers, committing any pending changes
+     * together with the ledger of ingested files and marking the run as complete.
+     * With a bulk load profile the index is first force-merged if the profile asks for it.
      */
     public void close() {
+        close(true);
+    }
+
+    /**
+     * Closes the index and taxonomy writers, committing any pending changes together with
+     * the ledger of ingested files. Does nothing for writers that were never opened.
+     *
+     * @param complete true if every file was indexed, so the run is marked complete (after the
+     *                 force merge of a bulk load profile); false after a failure, to commit a
+     *                 checkpoint that the next run resumes from, or to roll back to the last one
+     *                 if documents past the ledger were added.
+     */
+    public void close(boolean complete) {
         try {
-            indexWriter.commit();
-            taxoWriter.commit();
-            indexWriter.close();
-            taxoWriter.close();
+            if (indexWriter != null && taxoWriter != null && !complete && !ledgerComplete.getAsBoolean()) {
+                System.out.println("Run stopped early, rolling back to the last checkpoint");
+                indexWriter.rollback();
+                taxoWriter.rollback();
+                indexWriter = null;
+                taxoWriter = null;
+            }
+            if (indexWriter != null && taxoWriter != null) {
+                BulkLoadProfile bulkLoad = options.getBulkLoadProfile();
+                if (complete && bulkLoad != null && bulkLoad.getForceMergeSegments() > 0) {
+                    System.out.println("Force merging to " + bulkLoad.getForceMergeSegments() + " segments...");
+                    indexWriter.forceMerge(bulkLoad.getForceMergeSegments());
+                }
+                commit(complete);
+                if (!complete) {
+                    System.out.println(checkpointFile.isEmpty() ? "Run stopped early, the next run starts over"
+                            : "Run stopped early, the next run resumes after " + checkpointFile + " line " + checkpointLine);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error closing the index: " + e.getMessage());
+        } finally {
+            closeWriters();
+        }
+    }
+
+    // closes whichever writers were opened, even after a failed commit
+    private void closeWriters() {
+        try {
+            if (indexWriter != null && taxoWriter == null) {
+                indexWriter.rollback(); // the taxonomy never opened, so nothing was indexed
+            } else if (indexWriter != null) {
+                indexWriter.close();
+            }
+            if (taxoWriter != null) {
+                taxoWriter.close();
+            }
         } catch (IOException e) {
             System.out.println("Error closing the index: " + e.getMessage());
         }
@@ -0,0 +1,497 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.similarities.ClassicSimilarity;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Command line benchmarks for the indexing code paths.
+ * Every measurement runs a few warm-up rounds before the measured ones and reports
+ * wall time, throughput and the bytes allocated by the measuring thread.
+ *
+ * Usage: IndexingBenchmark (parse|documents|profiles|schema|highlight) &lt;reviewDir&gt; [rounds]
+ */
+public class IndexingBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int QUERY_WARMUP_ITERATIONS = 50;
+    private static final int QUERY_ITERATIONS = 200;
+    private static final String[] PARITY_WORDS = {"good", "great", "quality", "price", "works", "recommended", "5.0", "2014", "great price", "john", "customer", "15"};
+    private static final String[] QUERY_WORDS = {"good", "great", "bad", "quality", "price", "work", "love", "return", "recommend", "product"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: IndexingBenchmark (parse|documents|profiles|schema|highlight) <reviewDir> [rounds]");
+            return;
+        }
+        List<Path> reviewFiles = listReviewFiles(args[1]);
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        switch (args[0]) {
+            case "parse":
+                benchmarkParsers(reviewFiles, rounds);
+                break;
+            case "documents":
+                benchmarkDocumentBuilders(reviewFiles, rounds);
+                break;
+            case "profiles":
+                benchmarkProfiles(reviewFiles, rounds);
+                break;
+            case "schema":
+                benchmarkSchemas(reviewFiles, rounds);
+                break;
+            case "highlight":
+                benchmarkHighlighting(reviewFiles, rounds);
+                break;
+            default:
+                System.out.println("Unknown benchmark: " + args[0]);
+        }
+    }
+
+    /**
+     * Compares the JsonNode tree path with the streaming parser over the same files.
+     * Both paths copy the indexed fields into a ReviewRecord, which is what the Indexer consumes.
+     */
+    private static void benchmarkParsers(List<Path> reviewFiles, int rounds) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        StreamingReviewParser streamingParser = new StreamingReviewParser();
+        ReviewRecord review = new ReviewRecord();
+
+        measure("tree (readTree per line)", rounds, () -> {
+            long count = 0;
+            for (Path reviewFile : reviewFiles) {
+                try (BufferedReader reader = Files.newBufferedReader(reviewFile, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        JsonNode lineNode = mapper.readTree(line);
+                        if (lineNode == null) {
+                            continue;
+                        }
+                        for (JsonNode reviewNode : lineNode.isArray() ? lineNode : List.of(lineNode)) {
+                            review.copyFrom(reviewNode);
+                            count++;
+                        }
+                    }
+                }
+            }
+            return count;
+        });
+
+        measure("streaming (JsonParser tokens)", rounds, () -> {
+            long count = 0;
+            for (Path reviewFile : reviewFiles) {
+                count += streamingParser.parseFile(reviewFile, parsed -> { });
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Compares reused per-thread document builders with allocating a new document and new
+     * fields per review, first for document building alone and then for indexing into a
+     * temporary index. The reviews are parsed up front so only the document code is measured.
+     */
+    private static void benchmarkDocumentBuilders(List<Path> reviewFiles, int rounds) throws IOException {
+        List<ReviewRecord> reviews = loadReviews(reviewFiles);
+
+        measure("build, new fields per review", rounds, () -> {
+            long fields = 0;
+            for (ReviewRecord review : reviews) {
+                fields += new ReviewDocumentBuilder().build(review).getFields().size();
+            }
+            return fields > 0 ? reviews.size() : 0;
+        });
+
+        ReviewDocumentBuilder builder = new ReviewDocumentBuilder();
+        measure("build, reused fields", rounds, () -> {
+            long fields = 0;
+            for (ReviewRecord review : reviews) {
+                fields += builder.build(review).getFields().size();
+            }
+            return fields > 0 ? reviews.size() : 0;
+        });
+
+        measure("index, new fields per review", rounds,
+                () -> indexIntoTempIndex(reviews, new IndexingOptions().setReuseDocuments(false)));
+        measure("index, reused fields", rounds,
+                () -> indexIntoTempIndex(reviews, new IndexingOptions()));
+    }
+
+    /**
+     * Compares the IndexWriter defaults with the bulk load profile: indexing throughput first,
+     * then the latency of faceted queries on the index each configuration produced.
+     */
+    private static void benchmarkProfiles(List<Path> reviewFiles, int rounds) throws IOException {
+        List<ReviewRecord> reviews = loadReviews(reviewFiles);
+        IndexingOptions defaults = new IndexingOptions();
+        IndexingOptions bulkLoad = new IndexingOptions()
+                .setBulkLoadProfile(new BulkLoadProfile().setForceMergeSegments(1));
+
+        measure("index, default config", rounds, () -> indexIntoTempIndex(reviews, defaults));
+        measure("index, " + bulkLoad.getBulkLoadProfile(), rounds, () -> indexIntoTempIndex(reviews, bulkLoad));
+
+        withTempIndex(reviews, defaults, (indexDir, taxoDir) -> measureQueryLatency("query, default config", indexDir, taxoDir));
+        withTempIndex(reviews, bulkLoad, (indexDir, taxoDir) -> measureQueryLatency("query, bulk load", indexDir, taxoDir));
+    }
+
+    /**
+     * Compares an index with the catch-all field against one that expands "everything:"
+     * queries over the real fields: indexing time, index size, and how far the hits of
+     * the expanded queries agree with the hits of the catch-all field, both for parsed
+     * queries and for the single terms of the boolean query. The words include the asin,
+     * reviewerID and first name word of a review in lower case, and the day of its date,
+     * which the catch-all field matched.
+     */
+    private static void benchmarkSchemas(List<Path> reviewFiles, int rounds) throws IOException {
+        List<ReviewRecord> reviews = loadReviews(reviewFiles);
+        IndexingOptions options = new IndexingOptions().setStreamingParser(true);
+        IndexSchema catchAll = new IndexSchema();
+        IndexSchema expanded = new IndexSchema().setCatchAllField(false);
+
+        measure("index, " + catchAll, rounds, () -> indexIntoTempIndex(reviews, options, catchAll));
+        measure("index, " + expanded, rounds, () -> indexIntoTempIndex(reviews, options, expanded));
+
+        List<String> words = new ArrayList<>(Arrays.asList(PARITY_WORDS));
+        if (!reviews.isEmpty()) {
+            words.add(reviews.get(0).getAsin().toLowerCase());
+            words.add(reviews.get(0).getReviewerID().toLowerCase());
+            // a word of a reviewer name and the day of a date, which only the catch-all field tokenized
+            String[] name = reviews.get(0).getReviewerName().trim().split("\\s+");
+            if (!name[0].isEmpty()) {
+                words.add(name[0].toLowerCase());
+            }
+            String date = reviews.get(0).getCleanReviewTime();
+            if (date.length() >= 10) {
+                words.add(date.substring(8, 10));
+            }
+        }
+        Map<String, Set<String>> catchAllHits = new HashMap<>();
+        Map<String, Set<String>> catchAllTermHits = new HashMap<>();
+        withTempIndex(reviews, options, catchAll, (indexDir, taxoDir) -> {
+            System.out.printf("%-40s %10d bytes%n", "index size, " + catchAll, directorySize(indexDir));
+            catchAllHits.putAll(everythingHits(indexDir, words, false));
+            catchAllTermHits.putAll(everythingHits(indexDir, words, true));
+        });
+        withTempIndex(reviews, options, expanded, (indexDir, taxoDir) -> {
+            System.out.printf("%-40s %10d bytes%n", "index size, " + expanded, directorySize(indexDir));
+            printParity("everything:", words, catchAllHits, everythingHits(indexDir, words, false));
+            printParity("boolean term ", words, catchAllTermHits, everythingHits(indexDir, words, true));
+        });
+    }
+
+    /**
+     * Compares reviewText with term vectors (the old layout) against reviewText with offsets
+     * in the postings: indexing time and index size, then the time and output size of
+     * printing the top hits as full review bodies versus highlighted snippets.
+     */
+    private static void benchmarkHighlighting(List<Path> reviewFiles, int rounds) throws IOException {
+        List<ReviewRecord> reviews = loadReviews(reviewFiles);
+        IndexingOptions options = new IndexingOptions().setStreamingParser(true);
+        IndexSchema termVectors = new IndexSchema().setTermVectors(true).setPostingsOffsets(false);
+        IndexSchema offsets = new IndexSchema();
+
+        measure("index, " + termVectors, rounds, () -> indexIntoTempIndex(reviews, options, termVectors));
+        measure("index, " + offsets, rounds, () -> indexIntoTempIndex(reviews, options, offsets));
+
+        for (IndexSchema schema : new IndexSchema[]{termVectors, offsets}) {
+            withTempIndex(reviews, options, schema, (indexDir, taxoDir) -> {
+                System.out.printf("%-40s %10d bytes%n", "index size, " + schema, directorySize(indexDir));
+                try (DirectoryReader indexReader = DirectoryReader.open(FSDirectory.open(indexDir))) {
+                    IndexSearcher searcher = new IndexSearcher(indexReader);
+                    ReviewSnippets snippets = new ReviewSnippets(searcher, Indexer.createAnalyzer());
+                    List<Query> queries = new ArrayList<>();
+                    QueryParser parser = schema.queryParser("reviewText", Indexer.createAnalyzer());
+                    for (String word : QUERY_WORDS) {
+                        try {
+                            queries.add(parser.parse(word));
+                        } catch (ParseException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                    measure("full reviewText of top 10, " + schema, rounds, () -> {
+                        long chars = 0;
+                        for (Query query : queries) {
+                            for (ScoreDoc hit : searcher.search(query, 10).scoreDocs) {
+                                chars += searcher.storedFields().document(hit.doc).get("reviewText").length();
+                            }
+                        }
+                        System.out.print(chars + " chars  ");
+                        return queries.size() * 10L;
+                    });
+                    measure("snippets of top 10, " + schema, rounds, () -> {
+                        long chars = 0;
+                        for (Query query : queries) {
+                            for (String snippet : snippets.snippets("reviewText", query, searcher.search(query, 10))) {
+                                chars += snippet == null ? 0 : snippet.length();
+                            }
+                        }
+                        System.out.print(chars + " chars  ");
+                        return queries.size() * 10L;
+                    });
+                }
+            });
+        }
+    }
+
+    private static void printParity(String name, List<String> words, Map<String, Set<String>> catchAllHits,
+                                    Map<String, Set<String>> expandedHits) {
+        for (String word : words) {
+            Set<String> before = catchAllHits.get(word);
+            Set<String> after = expandedHits.get(word);
+            Set<String> common = new HashSet<>(before);
+            common.retainAll(after);
+            System.out.printf("%s%-20s catch-all %5d hits  expanded %5d hits  %5.1f%% of catch-all hits kept%n",
+                    name, word, before.size(), after.size(), before.isEmpty() ? 100.0 : 100.0 * common.size() / before.size());
+        }
+    }
+
+    // the reviews matching everything:<word> for each word, by reviewerID|asin; parsed, or as
+    // the boolean query of Facetery builds a single term
+    private static Map<String, Set<String>> everythingHits(Path indexDir, List<String> words, boolean fieldQueries) throws IOException {
+        Map<String, Set<String>> hits = new HashMap<>();
+        try (DirectoryReader indexReader = DirectoryReader.open(FSDirectory.open(indexDir))) {
+            IndexSearcher searcher = new IndexSearcher(indexReader);
+            IndexSchema schema = IndexSchema.read(indexReader);
+            QueryParser parser = schema.queryParser(IndexSchema.CATCH_ALL_FIELD, Indexer.createAnalyzer());
+            for (String word : words) {
+                Set<String> keys = new HashSet<>();
+                try {
+                    Query query = fieldQueries ? Facetery.createFieldQuery(schema, IndexSchema.CATCH_ALL_FIELD, word) : parser.parse(word);
+                    for (ScoreDoc hit : searcher.search(query, Math.max(1, indexReader.maxDoc())).scoreDocs) {
+                        Document doc = searcher.storedFields().document(hit.doc, Set.of("reviewerID", "asin"));
+                        keys.add(doc.get("reviewerID") + "|" + doc.get("asin"));
+                    }
+                } catch (ParseException e) {
+                    throw new IllegalStateException(e);
+                }
+                hits.put(word, keys);
+            }
+        }
+        return hits;
+    }
+
+    static long directorySize(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    /**
+     * Runs the faceted word queries of Facetery option 2 against an index and prints
+     * the mean, median and 99th percentile latency.
+     */
+    static void measureQueryLatency(String name, Path indexDir, Path taxoDir) throws IOException {
+        try (DirectoryReader indexReader = DirectoryReader.open(FSDirectory.open(indexDir));
+             TaxonomyReader taxoReader = new DirectoryTaxonomyReader(FSDirectory.open(taxoDir))) {
+            IndexSearcher searcher = new IndexSearcher(indexReader);
+            List<Query> queries = new ArrayList<>();
+            QueryParser parser = new QueryParser("reviewText", new EnglishAnalyzer());
+            for (String word : QUERY_WORDS) {
+                try {
+                    queries.add(parser.parse(word));
+                } catch (ParseException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            for (int i = 0; i < QUERY_WARMUP_ITERATIONS; i++) {
+                for (Query query : queries) {
+                    facetedSearch(searcher, taxoReader, query);
+                }
+            }
+            long[] latencies = new long[QUERY_ITERATIONS * queries.size()];
+            int n = 0;
+            for (int i = 0; i < QUERY_ITERATIONS; i++) {
+                for (Query query : queries) {
+                    long start = System.nanoTime();
+                    facetedSearch(searcher, taxoReader, query);
+                    latencies[n++] = System.nanoTime() - start;
+                }
+            }
+            printLatencies(name + " (" + indexReader.leaves().size() + " segments)", latencies);
+        }
+    }
+
+    private static void facetedSearch(IndexSearcher searcher, TaxonomyReader taxoReader, Query query) throws IOException {
+        FacetsCollector facetsCollector = FacetedSearch.search(searcher, query, 10).getFacetsCollector();
+        new FastTaxonomyFacetCounts(taxoReader, Indexer.getFconfig(), facetsCollector).getAllDims(100);
+    }
+
+    /**
+     * Prints the mean, median and 99th percentile of a set of latencies given in nanoseconds.
+     */
+    static void printLatencies(String name, long[] latencies) {
+        Arrays.sort(latencies);
+        double mean = Arrays.stream(latencies).average().orElse(0);
+        System.out.printf("%-40s mean %8.3f ms  p50 %8.3f ms  p99 %8.3f ms%n", name, mean / 1e6,
+                latencies[latencies.length / 2] / 1e6, latencies[(int) (latencies.length * 0.99)] / 1e6);
+    }
+
+    /**
+     * Indexes the reviews on the calling thread into a throw-away index.
+     *
+     * @return the number of reviews indexed.
+     */
+    static long indexIntoTempIndex(List<ReviewRecord> reviews, IndexingOptions options) throws IOException {
+        return indexIntoTempIndex(reviews, options, new IndexSchema());
+    }
+
+    static long indexIntoTempIndex(List<ReviewRecord> reviews, IndexingOptions options, IndexSchema schema) throws IOException {
+        withTempIndex(reviews, options, schema, (indexDir, taxoDir) -> { });
+        return reviews.size();
+    }
+
+    static void withTempIndex(List<ReviewRecord> reviews, IndexingOptions options, IndexUser user) throws IOException {
+        withTempIndex(reviews, options, new IndexSchema(), user);
+    }
+
+    /**
+     * Indexes the reviews into a temporary index, hands it to the caller and deletes it afterwards.
+     */
+    static void withTempIndex(List<ReviewRecord> reviews, IndexingOptions options, IndexSchema schema, IndexUser user) throws IOException {
+        Path indexDir = Files.createTempDirectory("bench-index");
+        Path taxoDir = Files.createTempDirectory("bench-taxo");
+        try {
+            Indexer indexer = new Indexer("", indexDir.toString(), taxoDir.toString());
+            indexer.setOptions(options);
+            indexer.setSchema(schema);
+            indexer.configurarIndice(Indexer.createAnalyzer(), new ClassicSimilarity());
+            try {
+                for (ReviewRecord review : reviews) {
+                    indexer.indexReviewDocument(review);
+                }
+            } finally {
+                indexer.close();
+            }
+            user.use(indexDir, taxoDir);
+        } finally {
+            deleteRecursively(indexDir);
+            deleteRecursively(taxoDir);
+        }
+    }
+
+    /**
+     * Parses all reviews of the given files into memory.
+     */
+    static List<ReviewRecord> loadReviews(List<Path> reviewFiles) throws IOException {
+        List<ReviewRecord> reviews = new ArrayList<>();
+        StreamingReviewParser parser = new StreamingReviewParser();
+        for (Path reviewFile : reviewFiles) {
+            parser.parseFile(reviewFile, review -> reviews.add(review.copy()));
+        }
+        return reviews;
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Runs a workload and prints its average time, throughput and allocation per round.
+     *
+     * @param name the label printed with the results.
+     * @param rounds the number of measured rounds.
+     * @param workload the code to measure; returns the number of reviews it processed.
+     * @throws IOException if the workload fails.
+     */
+    static void measure(String name, int rounds, Workload workload) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            workload.run();
+        }
+
+        long items = 0;
+        long allocatedBefore = allocatedBytes();
+        long[] gcBefore = gcCountAndTime();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            items += workload.run();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = allocatedBytes() - allocatedBefore;
+        long[] gcAfter = gcCountAndTime();
+
+        System.out.printf("%-32s %10.1f ms/round %12.0f reviews/sec %10.1f MB/round %8.0f bytes/review %5d GCs %6d ms GC%n",
+                name, seconds * 1000 / rounds, items / seconds,
+                allocated / (double) rounds / (1024 * 1024), items == 0 ? 0.0 : allocated / (double) items,
+                gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+    }
+
+    /**
+     * Returns the number of collections and the total collection time in ms over all collectors.
+     */
+    static long[] gcCountAndTime() {
+        long count = 0, time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    /**
+     * Returns the bytes allocated so far by the calling thread, or 0 if the JVM cannot tell.
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    static List<Path> listReviewFiles(String reviewDir) throws IOException {
+        List<Path> reviewFiles = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(reviewDir), "*.json")) {
+            for (Path reviewFile : stream) {
+                reviewFiles.add(reviewFile);
+            }
+        }
+        return reviewFiles;
+    }
+
+    @FunctionalInterface
+    interface Workload {
+        long run() throws IOException;
+    }
+
+    @FunctionalInterface
+    interface IndexUser {
+        void use(Path indexDir, Path taxoDir) throws IOException;
+    }
+}
@@ -0,0 +1,180 @@
+package org.example;
+
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
+
+/**
+ * Runtime options for an indexing run. They control how the review files are read
+ * and handed to the IndexWriter, not what ends up in the index.
+ */
+public class IndexingOptions {
+
+    private boolean parallel = false;
+    private boolean streamingParser = false;
+    private boolean reuseDocuments = true;
+    private boolean incremental = false;
+    private CommitPolicy commitPolicy = new CommitPolicy();
+    private BulkLoadProfile bulkLoadProfile;
+    private int readerThreads = 1;
+    private int parserThreads = 1;
+    private int builderThreads = 1;
+    private int queueCapacity = 64;
+    private int batchSize = 256;
+    private int hnswMaxConn = Lucene99HnswVectorsFormat.DEFAULT_MAX_CONN;
+    private int hnswBeamWidth = Lucene99HnswVectorsFormat.DEFAULT_BEAM_WIDTH;
+
+    /**
+     * Creates the default options: sequential ingestion on the calling thread.
+     */
+    public IndexingOptions() {
+    }
+
+    /**
+     * Enables the parallel ingestion pipeline with the given number of threads per stage.
+     *
+     * @param readerThreads threads reading lines from the review files.
+     * @param parserThreads threads parsing JSON lines into review records.
+     * @param builderThreads threads building Lucene documents and adding them to the writer.
+     * @return this instance.
+     */
+    public IndexingOptions setParallel(int readerThreads, int parserThreads, int builderThreads) {
+        if (readerThreads < 1 || parserThreads < 1 || builderThreads < 1) {
+            throw new IllegalArgumentException("Every pipeline stage needs at least one thread");
+        }
+        this.parallel = true;
+        this.readerThreads = readerThreads;
+        this.parserThreads = parserThreads;
+        this.builderThreads = builderThreads;
+        return this;
+    }
+
+    /**
+     * Sets the capacity of the queues between pipeline stages. A full queue blocks the
+     * producing stage, so this bounds the memory held by batches in flight.
+     *
+     * @param queueCapacity maximum number of batches waiting between two stages.
+     * @return this instance.
+     */
+    public IndexingOptions setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets how many lines (or reviews) travel together between pipeline stages.
+     *
+     * @param batchSize number of items per batch.
+     * @return this instance.
+     */
+    public IndexingOptions setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Selects the JSON parsing path: Jackson's token stream copying only the indexed fields,
+     * or a full JsonNode tree per line.
+     *
+     * @param streamingParser true to use the {@link StreamingReviewParser}.
+     * @return this instance.
+     */
+    public IndexingOptions setStreamingParser(boolean streamingParser) {
+        this.streamingParser = streamingParser;
+        return this;
+    }
+
+    /**
+     * Selects whether each indexing thread reuses one {@link ReviewDocumentBuilder}, or a new
+     * document with new fields is allocated for every review.
+     *
+     * @param reuseDocuments true to reuse the document and field instances.
+     * @return this instance.
+     */
+    public IndexingOptions setReuseDocuments(boolean reuseDocuments) {
+        this.reuseDocuments = reuseDocuments;
+        return this;
+    }
+
+    /**
+     * Selects incremental indexing: the existing index and taxonomy are opened in
+     * CREATE_OR_APPEND mode, reviews replace earlier versions with the same reviewerID and asin,
+     * and files (or the leading part of files) already indexed by a previous run are skipped.
+     *
+     * @param incremental true to append to the existing index instead of rebuilding it.
+     * @return this instance.
+     */
+    public IndexingOptions setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    /**
+     * Sets when the run commits. Each commit is a checkpoint an interrupted run resumes from.
+     *
+     * @param commitPolicy the commit policy; the default commits only at the end of the run.
+     * @return this instance.
+     */
+    public IndexingOptions setCommitPolicy(CommitPolicy commitPolicy) {
+        this.commitPolicy = commitPolicy;
+        return this;
+    }
+
+    /**
+     * Selects the IndexWriter settings for the run.
+     *
+     * @param bulkLoadProfile the bulk load settings, or null for the IndexWriter defaults.
+     * @return this instance.
+     */
+    public IndexingOptions setBulkLoadProfile(BulkLoadProfile bulkLoadProfile) {
+        this.bulkLoadProfile = bulkLoadProfile;
+        return this;
+    }
+
+    /**
+     * Sets how the HNSW graph of the review vectors is built, when the schema has them.
+     * Larger values find the nearest reviews more reliably, and make indexing and merging slower.
+     *
+     * @param maxConn the number of neighbours of each review in the graph, 16 by default.
+     * @param beamWidth the number of candidates considered when adding a review, 100 by default.
+     * @return this instance.
+     */
+    public IndexingOptions setHnsw(int maxConn, int beamWidth) {
+        if (maxConn < 1 || beamWidth < 1) {
+            throw new IllegalArgumentException("maxConn and beamWidth must be positive");
+        }
+        this.hnswMaxConn = maxConn;
+        this.hnswBeamWidth = beamWidth;
+        return this;
+    }
+
+    public boolean isParallel() {return parallel;}
+
+    public boolean isStreamingParser() {return streamingParser;}
+
+    public boolean isReuseDocuments() {return reuseDocuments;}
+
+    public boolean isIncremental() {return incremental;}
+
+    public CommitPolicy getCommitPolicy() {return commitPolicy;}
+
+    public BulkLoadProfile getBulkLoadProfile() {return bulkLoadProfile;}
+
+    public int getReaderThreads() {return readerThreads;}
+
+    public int getParserThreads() {return parserThreads;}
+
+    public int getBuilderThreads() {return builderThreads;}
+
+    public int getQueueCapacity() {return queueCapacity;}
+
+    public int getBatchSize() {return batchSize;}
+
+    public int getHnswMaxConn() {return hnswMaxConn;}
+
+    public int getHnswBeamWidth() {return hnswBeamWidth;}
+}
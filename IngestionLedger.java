@@ -0,0 +1,104 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records how many bytes (and lines) of each review file have been indexed.
+ * The ledger travels in the commit user data of the main index, so it is only ever as
+ * new as the documents that were committed with it.
+ */
+public class IngestionLedger {
+
+    static final String KEY_PREFIX = "ingested:";
+
+    // file -> {byte offset, line number} just after the last indexed line
+    private final Map<String, long[]> offsets = new ConcurrentHashMap<>();
+
+    /**
+     * Restores a ledger from commit user data, ignoring unrelated entries.
+     *
+     * @param commitData the user data of the last index commit, may be null.
+     * @return the restored ledger.
+     */
+    public static IngestionLedger fromCommitData(Iterable<Map.Entry<String, String>> commitData) {
+        IngestionLedger ledger = new IngestionLedger();
+        if (commitData != null) {
+            for (Map.Entry<String, String> entry : commitData) {
+                if (entry.getKey().startsWith(KEY_PREFIX)) {
+                    String[] position = entry.getValue().split(",");
+                    ledger.offsets.put(entry.getKey().substring(KEY_PREFIX.length()),
+                            new long[]{Long.parseLong(position[0]), position.length > 1 ? Long.parseLong(position[1]) : 0});
+                }
+            }
+        }
+        return ledger;
+    }
+
+    /**
+     * Returns the byte offset to start reading a file from: 0 for new files and for files that
+     * shrank since they were ingested (i.e. were replaced), the recorded offset otherwise.
+     *
+     * @param reviewFile the review file.
+     * @return the first byte that has not been indexed yet.
+     * @throws IOException if the file size cannot be read.
+     */
+    public long resumeOffset(Path reviewFile) throws IOException {
+        long[] ingested = offsets.get(key(reviewFile));
+        if (ingested == null || ingested[0] > Files.size(reviewFile)) {
+            return 0;
+        }
+        return ingested[0];
+    }
+
+    /**
+     * Returns the number of lines before {@link #resumeOffset(Path)}.
+     *
+     * @param reviewFile the review file.
+     * @return the number of lines already indexed, 0 if the file is read from the start.
+     * @throws IOException if the file size cannot be read.
+     */
+    public long resumeLine(Path reviewFile) throws IOException {
+        return resumeOffset(reviewFile) == 0 ? 0 : offsets.get(key(reviewFile))[1];
+    }
+
+    /**
+     * Records that a file has been indexed up to the given line.
+     *
+     * @param reviewFile the review file.
+     * @param offset the byte offset just after the last indexed line.
+     * @param lineNumber the number of that line in the file.
+     */
+    public void markIngested(Path reviewFile, long offset, long lineNumber) {
+        offsets.put(key(reviewFile), new long[]{offset, lineNumber});
+    }
+
+    /**
+     * Writes the ledger into a commit user data map.
+     *
+     * @param commitData the map to add the entries to.
+     * @return the same map.
+     */
+    public Map<String, String> addTo(Map<String, String> commitData) {
+        for (Map.Entry<String, long[]> entry : offsets.entrySet()) {
+            long[] position = entry.getValue();
+            commitData.put(KEY_PREFIX + entry.getKey(), position[0] + "," + position[1]);
+        }
+        return commitData;
+    }
+
+    /**
+     * @return the ledger as a new commit user data map.
+     */
+    public Map<String, String> toCommitData() {
+        return addTo(new HashMap<>());
+    }
+
+    private static String key(Path reviewFile) {
+        return reviewFile.toAbsolutePath().normalize().toString();
+    }
+}
@@ -0,0 +1,273 @@
+package org.example;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.queries.mlt.MoreLikeThis;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A k-nearest-neighbours sentiment classifier that finds the neighbours of a review with the
+ * index instead of comparing it to every training review. The review's most distinctive words
+ * in reviewText become a MoreLikeThis query, restricted to the training reviews, and its k best
+ * BM25 hits vote for their sentiment, each with its score as weight.
+ * <p>
+ * On an index with review vectors the neighbours can instead be the reviews whose
+ * {@link ReviewVectors} are nearest, found through the HNSW graph, see {@link #setVectors}; or,
+ * exactly, the ones whose term frequencies have the highest cosine, see {@link #setExact}.
+ * The sentiments of the training reviews are read once from their rating doc values, so a
+ * prediction is one query and loads no stored field.
+ */
+public class KnnSentimentClassifier {
+
+    /** Words of a review kept in its query, the ones with the highest tf-idf. */
+    public static final int MAX_QUERY_TERMS = 25;
+
+    private final IndexSearcher searcher;
+    private final int k;
+    private final MoreLikeThis moreLikeThis;
+    private final FixedBitSet positive;
+    private final FixedBitSet labelled;
+    private final Query training;
+    private final String majority;
+    private ReviewVectors vectors;
+    private SparseVectorScorer exact;
+    private int[] exactDocs; // the doc id of each text of the exact scorer
+    private float[] exactScores;
+
+    /**
+     * @param searcher a searcher over the index holding the training reviews.
+     * @param schema the schema of the index, which tells how its ratings are encoded.
+     * @param training the ids of the training reviews in the searcher's reader.
+     * @param analyzer the analyzer reviewText was indexed with, e.g. {@link Indexer#createAnalyzer()}.
+     * @param k the number of neighbours voting.
+     * @throws IOException if the index cannot be read.
+     */
+    public KnnSentimentClassifier(IndexSearcher searcher, IndexSchema schema, Bits training, Analyzer analyzer, int k)
+            throws IOException {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.searcher = searcher;
+        this.k = k;
+        FixedBitSet[] sentiments = NaiveBayesModel.sentiments(searcher.getIndexReader(), schema, training);
+        this.positive = sentiments[0];
+        this.labelled = positive.clone();
+        labelled.or(sentiments[1]);
+        this.training = new DocSetQuery(labelled);
+        this.majority = positive.cardinality() >= sentiments[1].cardinality()
+                ? NaiveBayesModel.POSITIVE : NaiveBayesModel.NEGATIVE;
+        this.moreLikeThis = new MoreLikeThis(searcher.getIndexReader());
+        moreLikeThis.setAnalyzer(analyzer);
+        moreLikeThis.setFieldNames(new String[]{NaiveBayesModel.FIELD});
+        moreLikeThis.setMinTermFreq(1); // a review rarely repeats a word
+        moreLikeThis.setMaxQueryTerms(MAX_QUERY_TERMS);
+    }
+
+    /**
+     * Finds the neighbours by vector instead of with a MoreLikeThis query.
+     *
+     * @param vectors the vectors of the index, matching the dimension of its schema, or null
+     *                to go back to MoreLikeThis.
+     * @return this instance.
+     */
+    public KnnSentimentClassifier setVectors(ReviewVectors vectors) {
+        this.vectors = vectors;
+        return this;
+    }
+
+    /**
+     * Finds the neighbours by comparing the text with every training review instead of with a
+     * query, by the cosine of their term frequencies. The review texts are loaded once, here,
+     * and each prediction then scores all of them in parallel. Not thread-safe while exact.
+     *
+     * @param exact true to compare with every training review, false to query the index again.
+     * @return this instance.
+     * @throws IOException if the training reviews cannot be loaded.
+     */
+    public KnnSentimentClassifier setExact(boolean exact) throws IOException {
+        if (!exact) {
+            this.exact = null;
+            this.exactDocs = null;
+            this.exactScores = null;
+            return this;
+        }
+        StoredFields storedFields = searcher.getIndexReader().storedFields();
+        List<String> texts = new ArrayList<>();
+        int[] docs = new int[labelled.cardinality()];
+        DocIdSetIterator labelledDocs = new BitSetIterator(labelled, 0);
+        for (int doc = labelledDocs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = labelledDocs.nextDoc()) {
+            String text = storedFields.document(doc).get(NaiveBayesModel.FIELD);
+            if (text != null) {
+                docs[texts.size()] = doc;
+                texts.add(text);
+            }
+        }
+        this.exact = new SparseVectorScorer(texts);
+        this.exactDocs = Arrays.copyOf(docs, texts.size());
+        this.exactScores = new float[texts.size()];
+        return this;
+    }
+
+    /**
+     * Finds the training reviews most like a text.
+     *
+     * @param text the text.
+     * @return up to k training reviews, best first.
+     * @throws IOException if the index cannot be read.
+     */
+    public TopDocs neighbours(String text) throws IOException {
+        if (exact != null) {
+            int[] top = exact.top(exact.vector(text), k, exactScores);
+            ScoreDoc[] hits = new ScoreDoc[top.length];
+            for (int i = 0; i < top.length; i++) {
+                hits[i] = new ScoreDoc(exactDocs[top[i]], exactScores[top[i]]);
+            }
+            return new TopDocs(new TotalHits(exact.size(), TotalHits.Relation.EQUAL_TO), hits);
+        }
+        if (vectors != null) {
+            Query nearest = vectors.query(text, k, training);
+            return nearest == null
+                    ? new TopDocs(new TotalHits(0, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0])
+                    : searcher.search(nearest, k);
+        }
+        Query query = new BooleanQuery.Builder()
+                .add(moreLikeThis.like(NaiveBayesModel.FIELD, new StringReader(text)), BooleanClause.Occur.MUST)
+                .add(training, BooleanClause.Occur.FILTER)
+                .build();
+        return searcher.search(query, k);
+    }
+
+    /**
+     * Classifies a review.
+     *
+     * @param text the review text.
+     * @return {@link NaiveBayesModel#POSITIVE} or {@link NaiveBayesModel#NEGATIVE}; the sentiment
+     *         of most training reviews if the neighbours are tied or the text matches none.
+     * @throws IOException if the index cannot be read.
+     */
+    public String classify(String text) throws IOException {
+        double positiveWeight = 0;
+        double negativeWeight = 0;
+        for (ScoreDoc neighbour : neighbours(text).scoreDocs) {
+            if (positive.get(neighbour.doc)) {
+                positiveWeight += neighbour.score;
+            } else {
+                negativeWeight += neighbour.score;
+            }
+        }
+        if (positiveWeight == negativeWeight) {
+            return majority;
+        }
+        return positiveWeight > negativeWeight ? NaiveBayesModel.POSITIVE : NaiveBayesModel.NEGATIVE;
+    }
+
+    public int getK() {return k;}
+
+    @Override
+    public String toString() {
+        return k + "-NN over " + training + (exact != null ? ", exact cosine" : vectors != null ? ", by " + vectors : "");
+    }
+
+    // matches the docs of a bitset of top-level doc ids, without caching: the set is only used by this classifier
+    private static final class DocSetQuery extends Query {
+        private final FixedBitSet docs;
+
+        DocSetQuery(FixedBitSet docs) {
+            this.docs = docs;
+        }
+
+        @Override
+        public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) {
+            return new ConstantScoreWeight(this, boost) {
+                @Override
+                public Scorer scorer(LeafReaderContext context) {
+                    return new ConstantScoreScorer(this, score(), scoreMode,
+                            new SliceIterator(docs, context.docBase, context.reader().maxDoc()));
+                }
+
+                @Override
+                public boolean isCacheable(LeafReaderContext ctx) {
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public void visit(QueryVisitor visitor) {
+            visitor.visitLeaf(this);
+        }
+
+        @Override
+        public String toString(String field) {
+            return docs.cardinality() + " training reviews";
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return sameClassAs(other) && docs == ((DocSetQuery) other).docs;
+        }
+
+        @Override
+        public int hashCode() {
+            return classHash() ^ System.identityHashCode(docs);
+        }
+    }
+
+    // the docs of one segment in a bitset of top-level doc ids, as segment doc ids
+    private static final class SliceIterator extends DocIdSetIterator {
+        private final FixedBitSet docs;
+        private final int docBase;
+        private final int maxDoc;
+        private int doc = -1;
+
+        SliceIterator(FixedBitSet docs, int docBase, int maxDoc) {
+            this.docs = docs;
+            this.docBase = docBase;
+            this.maxDoc = maxDoc;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            return advance(doc + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+            int next = target >= maxDoc ? NO_MORE_DOCS : docs.nextSetBit(docBase + target);
+            return doc = next == NO_MORE_DOCS || next >= docBase + maxDoc ? NO_MORE_DOCS : next - docBase;
+        }
+
+        @Override
+        public long cost() {
+            return maxDoc;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package org.example;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A multinomial Naive Bayes sentiment classifier, trained once and then used for any number of
+ * reviews. Training counts the words of every training review per sentiment; the counts are
+ * kept in long arrays indexed by the word's id in a {@link TermDictionary}, and turned into
+ * Laplace-smoothed log-probabilities once, when the model is built. Classifying a review is
+ * then one dictionary lookup and two array reads per word.
+ * <p>
+ * The model is trained either from the text of reviews, whose words are then the
+ * whitespace-separated tokens of the lower-cased text, or from the postings of reviewText in
+ * the index, whose words are the terms the index analyzer made and which classifies with the
+ * same analyzer. The likelihood of a word in a sentiment is (count + 1) / (words of the
+ * sentiment + distinct words of the sentiment), so a word never seen with a sentiment, or never
+ * seen at all, still counts against it.
+ */
+public class NaiveBayesModel {
+
+    public static final String POSITIVE = "positive";
+    public static final String NEGATIVE = "negative";
+    /** The lowest rating of a positive review. */
+    public static final double POSITIVE_RATING = 3.0;
+    /** The field whose postings {@link #train(IndexReader, IndexSchema, Bits, Analyzer)} counts. */
+    public static final String FIELD = "reviewText";
+
+    private static final int POS = 0;
+    private static final int NEG = 1;
+
+    private final Analyzer analyzer; // null: lower-cased, whitespace-separated words
+    private final TermDictionary terms;
+    private final long[] docCounts;
+    private final long[][] wordCounts; // [sentiment][term id]
+    private final double[] logPriors;
+    private final double[][] logLikelihoods; // [sentiment][term id]
+    private final double[] unseenLogLikelihoods; // of a word with no count in the sentiment
+
+    private NaiveBayesModel(Analyzer analyzer, TermDictionary terms, long[] docCounts, long[][] wordCounts) {
+        this.analyzer = analyzer;
+        this.terms = terms;
+        this.docCounts = docCounts;
+        this.wordCounts = wordCounts;
+        this.logPriors = new double[2];
+        this.logLikelihoods = new double[2][terms.size()];
+        this.unseenLogLikelihoods = new double[2];
+        long docs = docCounts[POS] + docCounts[NEG];
+        for (int sentiment = POS; sentiment <= NEG; sentiment++) {
+            logPriors[sentiment] = Math.log((double) docCounts[sentiment] / docs);
+            long words = 0;
+            int vocabulary = 0;
+            for (long count : wordCounts[sentiment]) {
+                words += count;
+                vocabulary += count > 0 ? 1 : 0;
+            }
+            double denominator = words + vocabulary;
+            unseenLogLikelihoods[sentiment] = Math.log(1 / denominator);
+            for (int id = 0; id < terms.size(); id++) {
+                logLikelihoods[sentiment][id] = Math.log((wordCounts[sentiment][id] + 1) / denominator);
+            }
+        }
+    }
+
+    /**
+     * Trains a model from the postings of reviewText, without loading any stored field: the
+     * sentiment of a review comes from its rating doc values, and the word counts of each
+     * sentiment are the term frequencies of the training reviews in the postings.
+     *
+     * @param reader the index.
+     * @param schema the schema of the index, which tells how its ratings are encoded.
+     * @param training the ids of the training reviews in the reader.
+     * @param analyzer the analyzer reviewText was indexed with, used again to classify, e.g.
+     *                 {@link Indexer#createAnalyzer()}.
+     * @return the model.
+     * @throws IOException if the index cannot be read.
+     * @throws IllegalStateException if no training review has review text.
+     */
+    public static NaiveBayesModel train(IndexReader reader, IndexSchema schema, Bits training, Analyzer analyzer)
+            throws IOException {
+        FixedBitSet[] sentiments = sentiments(reader, schema, training);
+        Trainer trainer = new Trainer(analyzer);
+        FixedBitSet withText = new FixedBitSet(reader.maxDoc()); // training reviews with a word, as the text trainer counts them
+        for (LeafReaderContext leaf : reader.leaves()) {
+            Terms fieldTerms = leaf.reader().terms(FIELD);
+            if (fieldTerms == null) {
+                continue;
+            }
+            TermsEnum termsEnum = fieldTerms.iterator();
+            PostingsEnum postings = null;
+            for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                long positive = 0;
+                long negative = 0;
+                postings = termsEnum.postings(postings, PostingsEnum.FREQS);
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    int id = leaf.docBase + doc;
+                    if (sentiments[POS].get(id)) {
+                        positive += postings.freq();
+                        withText.set(id);
+                    } else if (sentiments[NEG].get(id)) {
+                        negative += postings.freq();
+                        withText.set(id);
+                    }
+                }
+                if (positive > 0) {
+                    trainer.count(POS, term.utf8ToString(), positive);
+                }
+                if (negative > 0) {
+                    trainer.count(NEG, term.utf8ToString(), negative);
+                }
+            }
+        }
+        trainer.docCounts[POS] = FixedBitSet.intersectionCount(sentiments[POS], withText);
+        trainer.docCounts[NEG] = FixedBitSet.intersectionCount(sentiments[NEG], withText);
+        return trainer.build();
+    }
+
+    /**
+     * Sorts reviews by sentiment, from their rating doc values.
+     *
+     * @param reader the index.
+     * @param schema the schema of the index, which tells how its ratings are encoded.
+     * @param docs the ids of the reviews to sort; deleted ones are left out.
+     * @return the ids of the positive reviews, then of the negative ones.
+     * @throws IOException if the index cannot be read.
+     */
+    static FixedBitSet[] sentiments(IndexReader reader, IndexSchema schema, Bits docs) throws IOException {
+        FixedBitSet[] sentiments = {new FixedBitSet(reader.maxDoc()), new FixedBitSet(reader.maxDoc())};
+        for (LeafReaderContext leaf : reader.leaves()) {
+            NumericDocValues ratings = DocValues.getNumeric(leaf.reader(), "overall");
+            Bits liveDocs = leaf.reader().getLiveDocs();
+            for (int doc = ratings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = ratings.nextDoc()) {
+                if (docs.get(leaf.docBase + doc) && (liveDocs == null || liveDocs.get(doc))) {
+                    double overall = schema.hasDoubleRatings()
+                            ? Double.longBitsToDouble(ratings.longValue())
+                            : ratings.longValue();
+                    sentiments[index(sentimentOf(overall))].set(leaf.docBase + doc);
+                }
+            }
+        }
+        return sentiments;
+    }
+
+    /**
+     * @param overall the rating of a review, 1 to 5.
+     * @return the sentiment of a review with that rating.
+     */
+    public static String sentimentOf(double overall) {
+        return overall >= POSITIVE_RATING ? POSITIVE : NEGATIVE;
+    }
+
+    // the words of a text, as the model counts them
+    private static List<String> words(Analyzer analyzer, String text) {
+        if (analyzer == null) {
+            return Arrays.asList(text.toLowerCase().split("\\s+"));
+        }
+        List<String> words = new ArrayList<>();
+        try (TokenStream tokens = analyzer.tokenStream(FIELD, text)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                words.add(term.toString());
+            }
+            tokens.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen reading a string
+        }
+        return words;
+    }
+
+    /**
+     * Classifies a review.
+     *
+     * @param text the review text.
+     * @return {@link #POSITIVE} or {@link #NEGATIVE}; negative when both are as likely.
+     */
+    public String classify(String text) {
+        double positive = logPriors[POS];
+        double negative = logPriors[NEG];
+        for (String word : words(analyzer, text)) {
+            int id = terms.id(word);
+            positive += id < 0 ? unseenLogLikelihoods[POS] : logLikelihoods[POS][id];
+            negative += id < 0 ? unseenLogLikelihoods[NEG] : logLikelihoods[NEG][id];
+        }
+        return positive > negative ? POSITIVE : NEGATIVE;
+    }
+
+    /** @return the words seen in training. */
+    public TermDictionary getTerms() {return terms;}
+
+    /**
+     * @param sentiment {@link #POSITIVE} or {@link #NEGATIVE}.
+     * @return the number of training reviews with that sentiment.
+     */
+    public long getDocCount(String sentiment) {return docCounts[index(sentiment)];}
+
+    /**
+     * @param sentiment {@link #POSITIVE} or {@link #NEGATIVE}.
+     * @param word a word.
+     * @return how often the word occurs in the training reviews with that sentiment.
+     */
+    public long getWordCount(String sentiment, String word) {
+        int id = terms.id(word);
+        return id < 0 ? 0 : wordCounts[index(sentiment)][id];
+    }
+
+    private static int index(String sentiment) {
+        if (POSITIVE.equals(sentiment)) {
+            return POS;
+        }
+        if (NEGATIVE.equals(sentiment)) {
+            return NEG;
+        }
+        throw new IllegalArgumentException("Unknown sentiment " + sentiment);
+    }
+
+    @Override
+    public String toString() {
+        return "Naive Bayes model: " + docCounts[POS] + " positive and " + docCounts[NEG] + " negative reviews, "
+                + terms.size() + " words";
+    }
+
+    /**
+     * Counts the words of training reviews, then builds the model.
+     * Not thread-safe.
+     */
+    public static class Trainer {
+        private final Analyzer analyzer;
+        private final TermDictionary terms = new TermDictionary();
+        private final long[] docCounts = new long[2];
+        private final long[][] wordCounts = new long[2][1024];
+
+        /**
+         * Creates a trainer splitting reviews into their lower-cased, whitespace-separated words.
+         */
+        public Trainer() {
+            this(null);
+        }
+
+        /**
+         * @param analyzer the analyzer splitting reviews into words, for training and classifying.
+         */
+        public Trainer(Analyzer analyzer) {
+            this.analyzer = analyzer;
+        }
+
+        /**
+         * Counts a training review; reviews with another sentiment are ignored.
+         *
+         * @param sentiment {@link #POSITIVE} or {@link #NEGATIVE}.
+         * @param text the review text.
+         * @return this instance.
+         */
+        public Trainer add(String sentiment, String text) {
+            int index;
+            if (POSITIVE.equals(sentiment)) {
+                index = POS;
+            } else if (NEGATIVE.equals(sentiment)) {
+                index = NEG;
+            } else {
+                return this;
+            }
+            docCounts[index]++;
+            for (String word : words(analyzer, text)) {
+                count(index, word, 1);
+            }
+            return this;
+        }
+
+        private void count(int sentiment, String word, long count) {
+            int id = terms.add(word);
+            if (id == wordCounts[sentiment].length) {
+                wordCounts[POS] = Arrays.copyOf(wordCounts[POS], id * 2);
+                wordCounts[NEG] = Arrays.copyOf(wordCounts[NEG], id * 2);
+            }
+            wordCounts[sentiment][id] += count;
+        }
+
+        /**
+         * Builds the model from the reviews counted so far.
+         *
+         * @return the model.
+         * @throws IllegalStateException if no review was counted.
+         */
+        public NaiveBayesModel build() {
+            if (docCounts[POS] + docCounts[NEG] == 0) {
+                throw new IllegalStateException("No training reviews");
+            }
+            long[][] counts = {Arrays.copyOf(wordCounts[POS], terms.size()), Arrays.copyOf(wordCounts[NEG], terms.size())};
+            return new NaiveBayesModel(analyzer, terms, docCounts.clone(), counts);
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Multi-threaded ingestion pipeline for review files.
+ * Reader threads split the files into batches of lines, parser threads turn the lines into
+ * review records and builder threads build the documents and add them to the shared writers.
+ * The stages are connected by bounded queues, so a slow stage blocks the ones feeding it.
+ * Builders start the batches in the order they were read, so that whenever no batch is being
+ * built, the indexed lines of every file are the ones before a position the ledger can record.
+ */
+public class ParallelIngestion {
+
+    private static final long POLL_MILLIS = 100;
+    private static final long REPORT_SECONDS = 5;
+
+    // marks the end of the input for the consuming stage
+    private static final Batch<?> END_OF_INPUT = new Batch<>(null, -1, -1, Collections.emptyList());
+
+    private final Indexer indexer;
+    private final IndexingOptions options;
+
+    private final BlockingQueue<Batch<String>> lineBatches;
+    private final InOrderQueue reviewBatches;
+    // numbers the batches in the order they enter the pipeline
+    private final Object orderLock = new Object();
+    private long nextOrder;
+    private final AtomicLong indexedReviews = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final Queue<FileProgress> files = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a pipeline that indexes through the writers of the given Indexer.
+     *
+     * @param indexer the indexer whose IndexWriter and taxonomy writer receive the documents.
+     * @param options the per-stage thread counts, queue capacity and batch size.
+     */
+    public ParallelIngestion(Indexer indexer, IndexingOptions options) {
+        this.indexer = indexer;
+        this.options = options;
+        this.lineBatches = new ArrayBlockingQueue<>(options.getQueueCapacity());
+        this.reviewBatches = new InOrderQueue(options.getQueueCapacity());
+    }
+
+    /**
+     * Runs the pipeline over the given files and waits until every review has been added.
+     *
+     * @param reviewFiles the JSON review files to index.
+     * @return the number of reviews indexed.
+     * @throws IOException if any stage fails; the remaining stages are stopped.
+     */
+    public long run(List<Path> reviewFiles) throws IOException {
+        ConcurrentLinkedQueue<Path> pendingFiles = new ConcurrentLinkedQueue<>(reviewFiles);
+        indexer.setLedgerCondition(this::ledgerComplete);
+        ExecutorService readers = Executors.newFixedThreadPool(options.getReaderThreads());
+        ExecutorService parsers = Executors.newFixedThreadPool(options.getParserThreads());
+        ExecutorService builders = Executors.newFixedThreadPool(options.getBuilderThreads());
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+
+        long start = System.nanoTime();
+        reporter.scheduleAtFixedRate(() -> report(start), REPORT_SECONDS, REPORT_SECONDS, TimeUnit.SECONDS);
+
+        try {
+            for (int i = 0; i < options.getReaderThreads(); i++) {
+                readers.execute(guarded(() -> readFiles(pendingFiles)));
+            }
+            for (int i = 0; i < options.getParserThreads(); i++) {
+                parsers.execute(guarded(this::parseLines));
+            }
+            for (int i = 0; i < options.getBuilderThreads(); i++) {
+                builders.execute(guarded(this::buildDocuments));
+            }
+
+            // shut the stages down in order, each one once its producers are done
+            awaitStage(readers);
+            signalEnd(lineBatches, options.getParserThreads());
+            awaitStage(parsers);
+            signalEnd(reviewBatches, options.getBuilderThreads());
+            awaitStage(builders);
+        } finally {
+            readers.shutdownNow();
+            parsers.shutdownNow();
+            builders.shutdownNow();
+            reporter.shutdownNow();
+        }
+
+        Throwable error = failure.get();
+        if (error != null) {
+            throw error instanceof IOException ? (IOException) error : new IOException(error);
+        }
+
+        report(start);
+        return indexedReviews.get();
+    }
+
+    private void readFiles(ConcurrentLinkedQueue<Path> pendingFiles) throws Exception {
+        Path reviewFile;
+        while ((reviewFile = pendingFiles.poll()) != null && failure.get() == null) {
+            try (ReviewLineReader reader = indexer.openForIngestion(reviewFile)) {
+                if (reader == null) {
+                    continue;
+                }
+                System.out.println("Indexing document " + reviewFile);
+                FileProgress file = new FileProgress(reviewFile);
+                files.add(file);
+                List<String> lines = new ArrayList<>(options.getBatchSize());
+                while (reader.next()) {
+                    if (reader.isBlank()) {
+                        continue;
+                    }
+                    lines.add(reader.line());
+                    if (lines.size() == options.getBatchSize()) {
+                        send(file, lines, reader.offset(), reader.lineNumber());
+                        lines = new ArrayList<>(options.getBatchSize());
+                    }
+                }
+                if (!lines.isEmpty()) {
+                    send(file, lines, reader.offset(), reader.lineNumber());
+                }
+                file.readUpTo(reader.offset(), reader.lineNumber());
+            }
+        }
+    }
+
+    // numbers a batch and queues it, in one step so the parsers take the batches in number order
+    private void send(FileProgress file, List<String> lines, long endOffset, long endLine) throws InterruptedException {
+        synchronized (orderLock) {
+            put(lineBatches, file.newBatch(nextOrder++, lines, endOffset, endLine));
+        }
+    }
+
+    private void parseLines() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        StreamingReviewParser streamingParser = new StreamingReviewParser();
+        Batch<String> lines;
+        while ((lines = take(lineBatches)) != END_OF_INPUT) {
+            List<ReviewRecord> reviews = new ArrayList<>(lines.items.size());
+            for (String line : lines.items) {
+                if (options.isStreamingParser()) {
+                    streamingParser.parseLine(line, review -> reviews.add(review.copy()));
+                    continue;
+                }
+                // a line holds either a single review or an array of reviews
+                JsonNode node = mapper.readTree(line);
+                if (node.isArray()) {
+                    node.forEach(reviewNode -> reviews.add(new ReviewRecord().copyFrom(reviewNode)));
+                } else {
+                    reviews.add(new ReviewRecord().copyFrom(node));
+                }
+            }
+            reviewBatches.put(lines.withItems(reviews));
+        }
+    }
+
+    private void buildDocuments() throws Exception {
+        Batch<ReviewRecord> reviews;
+        // after a failure the batches still queued would only be indexed past the ledger
+        while (failure.get() == null && (reviews = reviewBatches.take()).file != null) {
+            Lock batchLock = indexer.batchLock();
+            batchLock.lock();
+            try {
+                // until it is recorded, a batch that fails half-way keeps the documents it added out of any checkpoint
+                reviews.file.batchStarted(reviews.sequence);
+                for (ReviewRecord review : reviews.items) {
+                    indexer.indexReviewDocument(review);
+                }
+                reviews.file.batchIndexed(reviews.sequence);
+            } finally {
+                batchLock.unlock();
+            }
+            indexedReviews.addAndGet(reviews.items.size());
+            indexer.maybeCommit();
+        }
+    }
+
+    // true when no file has a batch indexed ahead of one still in the pipeline, or one indexed only in part
+    private boolean ledgerComplete() {
+        for (FileProgress file : files) {
+            if (!file.isRecorded()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void report(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long reviews = indexedReviews.get();
+        System.out.printf("Indexed %d reviews in %.1f s (%.0f docs/sec)%n",
+                reviews, seconds, seconds > 0 ? reviews / seconds : 0.0);
+    }
+
+    private Runnable guarded(Stage stage) {
+        return () -> {
+            try {
+                stage.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        };
+    }
+
+    private <T> void put(BlockingQueue<T> queue, T batch) throws InterruptedException {
+        // blocks while the next stage is behind, but gives up once another stage failed
+        while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (failure.get() != null) {
+                throw new InterruptedException("Ingestion aborted");
+            }
+        }
+    }
+
+    private <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+        T batch;
+        while ((batch = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+            if (failure.get() != null) {
+                throw new InterruptedException("Ingestion aborted");
+            }
+        }
+        return batch;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void signalEnd(BlockingQueue<Batch<T>> queue, int consumers) {
+        try {
+            for (int i = 0; i < consumers; i++) {
+                put(queue, (Batch<T>) END_OF_INPUT);
+            }
+        } catch (InterruptedException e) {
+            // a stage failed, the failure is reported by run()
+        }
+    }
+
+    private void signalEnd(InOrderQueue queue, int consumers) {
+        try {
+            for (int i = 0; i < consumers; i++) {
+                synchronized (orderLock) {
+                    queue.put(new Batch<>(null, -1, nextOrder++, Collections.emptyList()));
+                }
+            }
+        } catch (InterruptedException e) {
+            // a stage failed, the failure is reported by run()
+        }
+    }
+
+    private void awaitStage(ExecutorService stage) throws IOException {
+        stage.shutdown();
+        try {
+            while (!stage.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                // keep waiting, a failing stage unblocks the others through put/take
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the ingestion pipeline", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    /**
+     * A group of lines or reviews travelling between stages, with the file they come from,
+     * their position in it and their place in the pipeline. A batch without a file marks the
+     * end of the input.
+     */
+    private static final class Batch<T> {
+        final FileProgress file;
+        final long sequence;
+        final long order;
+        final List<T> items;
+
+        Batch(FileProgress file, long sequence, long order, List<T> items) {
+            this.file = file;
+            this.sequence = sequence;
+            this.order = order;
+            this.items = items;
+        }
+
+        <U> Batch<U> withItems(List<U> items) {
+            return new Batch<>(file, sequence, order, items);
+        }
+    }
+
+    /**
+     * Hands the parsed batches to the builders in the order they were read, whichever parser
+     * finishes first. Holds up to a capacity of batches, and always takes the next one to
+     * build, so the parser holding it never waits behind later ones.
+     */
+    private final class InOrderQueue {
+        private final int capacity;
+        private final Map<Long, Batch<ReviewRecord>> batches = new HashMap<>();
+        private long next;
+
+        InOrderQueue(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void put(Batch<ReviewRecord> batch) throws InterruptedException {
+            while (batches.size() >= capacity && batch.order != next) {
+                await();
+            }
+            batches.put(batch.order, batch);
+            notifyAll();
+        }
+
+        synchronized Batch<ReviewRecord> take() throws InterruptedException {
+            Batch<ReviewRecord> batch;
+            while ((batch = batches.remove(next)) == null) {
+                await();
+            }
+            next++;
+            notifyAll();
+            return batch;
+        }
+
+        // waits for a put or a take, but gives up once another stage failed
+        private void await() throws InterruptedException {
+            wait(POLL_MILLIS);
+            if (failure.get() != null) {
+                throw new InterruptedException("Ingestion aborted");
+            }
+        }
+    }
+
+    /**
+     * Tracks the batches of one file still in the pipeline. Batches finish out of order, so
+     * the ingestion ledger (and the checkpoint position) advances to the end of a batch only
+     * once it and every batch before it were indexed, the same per-line position the
+     * sequential path records. Batches are indexed and recorded under the indexer's batch lock
+     * and started in order, so while a checkpoint holds that lock no batch is indexed ahead of
+     * the ledger. A batch that failed after adding some of its reviews stays started, so the run
+     * rolls back to the last checkpoint, and a run resumed from it indexes no review twice.
+     */
+    private final class FileProgress {
+        private final Path reviewFile;
+        // {byte offset, line number} just after the last line of each batch not recorded yet, by sequence
+        private final Map<Long, long[]> ends = new HashMap<>();
+        private final Set<Long> indexed = new HashSet<>();
+        // batches whose documents are being added
+        private final Set<Long> started = new HashSet<>();
+        private long nextSequence;
+        private long nextToRecord;
+        // the position after the last batch, once the file was read to the end
+        private long lastSequence = -1;
+
+        FileProgress(Path reviewFile) {
+            this.reviewFile = reviewFile;
+        }
+
+        synchronized <T> Batch<T> newBatch(long order, List<T> items, long endOffset, long endLine) {
+            ends.put(nextSequence, new long[]{endOffset, endLine});
+            return new Batch<>(this, nextSequence++, order, items);
+        }
+
+        // the file was read to the end; trailing blank lines count once the last batch is indexed
+        void readUpTo(long offset, long lineNumber) {
+            Lock batchLock = indexer.batchLock();
+            batchLock.lock();
+            try {
+                synchronized (this) {
+                    ends.put(nextSequence, new long[]{offset, lineNumber});
+                    lastSequence = nextSequence++;
+                    record();
+                }
+            } finally {
+                batchLock.unlock();
+            }
+        }
+
+        synchronized void batchStarted(long sequence) {
+            started.add(sequence);
+        }
+
+        synchronized void batchIndexed(long sequence) {
+            started.remove(sequence);
+            indexed.add(sequence);
+            record();
+        }
+
+        // advances the ledger over the batches indexed without a gap
+        private void record() {
+            long[] end = null;
+            while (indexed.remove(nextToRecord) || nextToRecord == lastSequence) {
+                end = ends.remove(nextToRecord++);
+            }
+            if (end != null) {
+                // under the monitor, so the ledger never moves back
+                indexer.markIngested(reviewFile, end[1], end[0]);
+            }
+        }
+
+        synchronized boolean isRecorded() {
+            return indexed.isEmpty() && started.isEmpty();
+        }
+    }
+}
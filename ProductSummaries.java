@@ -0,0 +1,190 @@
+package org.example;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@link ProductSummary} of every product of an index, so a product's facet counts are
+ * a map lookup instead of a search that collects and counts its reviews.
+ * <p>
+ * Summaries are computed per segment from the asin, overall and yearMonth doc values,
+ * skipping deleted reviews, and kept by the segment's core. When the reader changes only
+ * new segments, and segments whose deletions changed, are read again; the others are reused.
+ * The per-segment summaries of a product are added up when it is looked up, and only for
+ * that product, so a refresh costs the new segments and not a pass over every product.
+ * The counts are thus always those of the reader passed in, i.e. the same as counting the
+ * hits of a TermQuery on its asin.
+ * <p>
+ * Indexes written before the yearMonth field existed cannot be summarized; lookups then
+ * return null and the caller counts the hits instead.
+ */
+public class ProductSummaries {
+
+    // by segment core key; each entry remembers the reader key it was read with, which changes with the deletions
+    private Map<Object, SegmentSummaries> segments = new HashMap<>();
+    private Object readerKey;
+    // the products merged across segments since the last reader change
+    private final Map<String, ProductSummary> merged = new HashMap<>();
+    private boolean complete = true;
+    private long segmentsRead;
+
+    /**
+     * Returns the summary of a product, bringing the summaries up to date with the reader first.
+     *
+     * @param reader the reader of the index, usually the one the searcher of the current query uses.
+     * @param schema the schema of the index, which decides how the rating doc values are read.
+     * @param asin the product.
+     * @return the summary, with zero counts if the product has no reviews, or null if the
+     *         index has segments without yearMonth doc values.
+     * @throws IOException if the doc values cannot be read.
+     */
+    public synchronized ProductSummary get(IndexReader reader, IndexSchema schema, String asin) throws IOException {
+        update(reader, schema);
+        if (!complete) {
+            return null;
+        }
+        ProductSummary summary = merged.get(asin);
+        if (summary == null) {
+            summary = merge(asin);
+            merged.put(asin, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * Brings the summaries up to date with a reader, reading only the segments not seen before.
+     *
+     * @param reader the reader of the index.
+     * @param schema the schema of the index.
+     * @throws IOException if the doc values cannot be read.
+     */
+    public synchronized void update(IndexReader reader, IndexSchema schema) throws IOException {
+        IndexReader.CacheHelper cacheHelper = reader.getReaderCacheHelper();
+        if (cacheHelper != null && cacheHelper.getKey() == readerKey) {
+            return;
+        }
+        Map<Object, SegmentSummaries> current = new HashMap<>();
+        boolean allComplete = true;
+        for (LeafReaderContext leaf : reader.leaves()) {
+            IndexReader.CacheHelper coreHelper = leaf.reader().getCoreCacheHelper();
+            IndexReader.CacheHelper leafHelper = leaf.reader().getReaderCacheHelper();
+            Object coreKey = coreHelper == null ? leaf : coreHelper.getKey();
+            Object leafKey = leafHelper == null ? leaf : leafHelper.getKey();
+            SegmentSummaries segment = segments.get(coreKey);
+            if (segment == null || segment.readerKey != leafKey) {
+                segment = SegmentSummaries.read(leaf.reader(), leafKey, schema.hasDoubleRatings());
+                segmentsRead++;
+            }
+            current.put(coreKey, segment);
+            allComplete &= segment.complete;
+        }
+        // segments merged away or closed are dropped here
+        segments = current;
+        complete = allComplete;
+        merged.clear();
+        readerKey = cacheHelper == null ? null : cacheHelper.getKey();
+    }
+
+    // a product found in a single segment keeps that segment's summary, the others are added up
+    private ProductSummary merge(String asin) {
+        ProductSummary found = null;
+        ProductSummary.Builder builder = null;
+        for (SegmentSummaries segment : segments.values()) {
+            ProductSummary summary = segment.products.get(asin);
+            if (summary == null) {
+                continue;
+            }
+            if (found == null) {
+                found = summary;
+            } else {
+                if (builder == null) {
+                    builder = new ProductSummary.Builder(asin);
+                    builder.add(found);
+                }
+                builder.add(summary);
+            }
+        }
+        if (builder != null) {
+            return builder.build();
+        }
+        return found == null ? ProductSummary.empty(asin) : found;
+    }
+
+    /** @return the number of products summarized, as of the last update. */
+    public synchronized int size() {
+        Set<String> products = new HashSet<>();
+        for (SegmentSummaries segment : segments.values()) {
+            products.addAll(segment.products.keySet());
+        }
+        return products.size();
+    }
+
+    /** @return how many segments were read since this instance was created; reused segments are not counted. */
+    public synchronized long getSegmentsRead() {return segmentsRead;}
+
+    /**
+     * The summaries of the live reviews of one segment.
+     */
+    private static final class SegmentSummaries {
+        private final Object readerKey;
+        private final Map<String, ProductSummary> products;
+        private final boolean complete;
+
+        private SegmentSummaries(Object readerKey, Map<String, ProductSummary> products, boolean complete) {
+            this.readerKey = readerKey;
+            this.products = products;
+            this.complete = complete;
+        }
+
+        static SegmentSummaries read(LeafReader reader, Object readerKey, boolean doubleRatings) throws IOException {
+            SortedDocValues asins = DocValues.getSorted(reader, "asin");
+            NumericDocValues ratings = DocValues.getNumeric(reader, "overall");
+            NumericDocValues yearMonths = reader.getNumericDocValues(ReviewDocumentBuilder.YEAR_MONTH_FIELD);
+            Bits liveDocs = reader.getLiveDocs();
+            // one builder per asin ordinal of the segment, no lookups by string while reading
+            ProductSummary.Builder[] builders = new ProductSummary.Builder[asins.getValueCount()];
+            boolean complete = true;
+            for (int doc = asins.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = asins.nextDoc()) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                if (yearMonths == null || !yearMonths.advanceExact(doc)) {
+                    complete = false;
+                    break;
+                }
+                int ord = asins.ordValue();
+                if (builders[ord] == null) {
+                    builders[ord] = new ProductSummary.Builder(asins.lookupOrd(ord).utf8ToString());
+                }
+                long rating = -1;
+                if (ratings.advanceExact(doc)) {
+                    // counted by whole star, the way the old long doc values truncated it
+                    rating = doubleRatings ? (long) Math.floor(Double.longBitsToDouble(ratings.longValue())) : ratings.longValue();
+                }
+                builders[ord].add(rating, (int) yearMonths.longValue());
+            }
+            Map<String, ProductSummary> products = new HashMap<>();
+            if (complete) {
+                for (ProductSummary.Builder builder : builders) {
+                    if (builder != null) {
+                        ProductSummary summary = builder.build();
+                        products.put(summary.getAsin(), summary);
+                    }
+                }
+            }
+            return new SegmentSummaries(readerKey, products, complete);
+        }
+    }
+}
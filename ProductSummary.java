@@ -0,0 +1,214 @@
+package org.example;
+
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.LabelAndValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The facet counts of the reviews of one product: how many there are per rating, the good
+ * (3-5) and bad (0-2) split, and how many per year and month. Instances are immutable and
+ * are built by {@link ProductSummaries} from doc values, so reading one does not search.
+ */
+public class ProductSummary {
+
+    /** Highest rating counted in the histogram; ratings are read as whole stars. */
+    public static final int MAX_RATING = 5;
+
+    private final String asin;
+    private final int count;
+    private final int[] ratingCounts;
+    private final int[] yearMonths; // sorted, year * 100 + month
+    private final int[] yearMonthCounts;
+
+    ProductSummary(String asin, int count, int[] ratingCounts, int[] yearMonths, int[] yearMonthCounts) {
+        this.asin = asin;
+        this.count = count;
+        this.ratingCounts = ratingCounts;
+        this.yearMonths = yearMonths;
+        this.yearMonthCounts = yearMonthCounts;
+    }
+
+    /**
+     * Returns the summary of a product without reviews.
+     *
+     * @param asin the product.
+     * @return a summary with every count at zero.
+     */
+    static ProductSummary empty(String asin) {
+        return new ProductSummary(asin, 0, new int[MAX_RATING + 1], new int[0], new int[0]);
+    }
+
+    public String getAsin() {return asin;}
+
+    /** @return the number of reviews of the product. */
+    public int getCount() {return count;}
+
+    /**
+     * @param rating a whole rating, 0 to {@link #MAX_RATING}.
+     * @return the number of reviews with that rating.
+     */
+    public int getRatingCount(int rating) {
+        return rating < 0 || rating > MAX_RATING ? 0 : ratingCounts[rating];
+    }
+
+    /** @return the number of reviews rated 3 to 5, the "good" range of the numeric query. */
+    public int getGood() {return ratingCounts[3] + ratingCounts[4] + ratingCounts[5];}
+
+    /** @return the number of reviews rated 0 to 2, the "bad" range of the numeric query. */
+    public int getBad() {return ratingCounts[0] + ratingCounts[1] + ratingCounts[2];}
+
+    /**
+     * Returns the good and bad split the way the numeric query's LongRangeFacetCounts gives it.
+     *
+     * @return the counts of the "good" and "bad" ranges of "overall".
+     */
+    public FacetResult rangeCounts() {
+        LabelAndValue[] ranges = {new LabelAndValue("good", getGood()), new LabelAndValue("bad", getBad())};
+        return new FacetResult("overall", new String[0], getGood() + getBad(), ranges, ranges.length);
+    }
+
+    /**
+     * Returns the number of reviews in a month.
+     *
+     * @param year the year, e.g. 2014.
+     * @param month the month, 1 to 12.
+     * @return the number of reviews written that month.
+     */
+    public int getMonthCount(int year, int month) {
+        int i = Arrays.binarySearch(yearMonths, year * 100 + month);
+        return i < 0 ? 0 : yearMonthCounts[i];
+    }
+
+    /**
+     * Returns the counts of the "date" and "overall" dimensions the way the facets of the
+     * product's reviews give them: years at the top level of "date" ordered by count, then by
+     * label, and the stars some review has, "1.0" to "5.0" in star order, as
+     * {@link RatingFacets#starCounts} lists them. Empty if the product has no reviews.
+     *
+     * @return the counts per dimension.
+     */
+    public List<FacetResult> toFacetResults() {
+        List<FacetResult> results = new ArrayList<>();
+        if (count == 0) {
+            return results;
+        }
+        List<LabelAndValue> years = new ArrayList<>();
+        for (int i = 0; i < yearMonths.length; ) {
+            int year = yearMonths[i] / 100;
+            int yearCount = 0;
+            for (; i < yearMonths.length && yearMonths[i] / 100 == year; i++) {
+                yearCount += yearMonthCounts[i];
+            }
+            years.add(new LabelAndValue(String.format("%04d", year), yearCount));
+        }
+        results.add(facetResult("date", years));
+        // stars from 1, like the rating ranges; a rating under one still counts as bad
+        List<LabelAndValue> ratings = new ArrayList<>();
+        int rated = 0;
+        for (int rating = 1; rating <= MAX_RATING; rating++) {
+            if (ratingCounts[rating] > 0) {
+                ratings.add(new LabelAndValue(String.valueOf((double) rating), ratingCounts[rating]));
+                rated += ratingCounts[rating];
+            }
+        }
+        results.add(new FacetResult("overall", new String[0], rated, ratings.toArray(new LabelAndValue[0]), ratings.size()));
+        return results;
+    }
+
+    /**
+     * Returns the month counts of a year, as the "date" facet gives them below the year.
+     *
+     * @param year the year, e.g. 2014.
+     * @return the counts per month, or null if the product has no reviews that year.
+     */
+    public FacetResult monthCounts(int year) {
+        List<LabelAndValue> months = new ArrayList<>();
+        for (int i = 0; i < yearMonths.length; i++) {
+            if (yearMonths[i] / 100 == year) {
+                months.add(new LabelAndValue(String.format("%02d", yearMonths[i] % 100), yearMonthCounts[i]));
+            }
+        }
+        if (months.isEmpty()) {
+            return null;
+        }
+        FacetResult result = facetResult("date", months);
+        return new FacetResult(result.dim, new String[]{String.format("%04d", year)}, result.value, result.labelValues, result.childCount);
+    }
+
+    private static FacetResult facetResult(String dim, List<LabelAndValue> labelValues) {
+        labelValues.sort(Comparator.comparing((LabelAndValue lv) -> lv.value.intValue()).reversed()
+                .thenComparing(lv -> lv.label));
+        int total = 0;
+        for (LabelAndValue lv : labelValues) {
+            total += lv.value.intValue();
+        }
+        return new FacetResult(dim, new String[0], total, labelValues.toArray(new LabelAndValue[0]), labelValues.size());
+    }
+
+    @Override
+    public String toString() {
+        return asin + ": " + count + " reviews, " + getGood() + " good, " + getBad() + " bad";
+    }
+
+    /**
+     * Adds up the reviews of one product, in one segment or across segments.
+     */
+    static class Builder {
+        private final String asin;
+        private int count;
+        private final int[] ratingCounts = new int[MAX_RATING + 1];
+        private int[] yearMonths = new int[4];
+        private int[] yearMonthCounts = new int[4];
+        private int months;
+
+        Builder(String asin) {
+            this.asin = asin;
+        }
+
+        void add(long rating, int yearMonth) {
+            count++;
+            if (rating >= 0 && rating <= MAX_RATING) {
+                ratingCounts[(int) rating]++;
+            }
+            addMonth(yearMonth, 1);
+        }
+
+        void add(ProductSummary summary) {
+            count += summary.count;
+            for (int rating = 0; rating <= MAX_RATING; rating++) {
+                ratingCounts[rating] += summary.ratingCounts[rating];
+            }
+            for (int i = 0; i < summary.yearMonths.length; i++) {
+                addMonth(summary.yearMonths[i], summary.yearMonthCounts[i]);
+            }
+        }
+
+        // months are few per product, so a sorted array with insertion beats a map
+        private void addMonth(int yearMonth, int n) {
+            int i = Arrays.binarySearch(yearMonths, 0, months, yearMonth);
+            if (i >= 0) {
+                yearMonthCounts[i] += n;
+                return;
+            }
+            i = -i - 1;
+            if (months == yearMonths.length) {
+                yearMonths = Arrays.copyOf(yearMonths, months * 2);
+                yearMonthCounts = Arrays.copyOf(yearMonthCounts, months * 2);
+            }
+            System.arraycopy(yearMonths, i, yearMonths, i + 1, months - i);
+            System.arraycopy(yearMonthCounts, i, yearMonthCounts, i + 1, months - i);
+            yearMonths[i] = yearMonth;
+            yearMonthCounts[i] = n;
+            months++;
+        }
+
+        ProductSummary build() {
+            return new ProductSummary(asin, count, ratingCounts.clone(),
+                    Arrays.copyOf(yearMonths, months), Arrays.copyOf(yearMonthCounts, months));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.example;
+
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.range.DoubleRange;
+import org.apache.lucene.facet.range.DoubleRangeFacetCounts;
+import org.apache.lucene.facet.range.LongRange;
+import org.apache.lucene.facet.range.LongRangeFacetCounts;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ranges of the "overall" rating that hits are counted in, e.g. good and bad, or one range
+ * per star. The counts come from one pass over the rating doc values of the hits, without
+ * taxonomy ordinals; indexes with {@link IndexSchema#hasDoubleRatings() double ratings} have
+ * no taxonomy facet for the rating at all. Indexes written before keep the rating truncated
+ * to a long in their doc values, and are counted with the equivalent whole-star ranges.
+ */
+public class RatingFacets {
+
+    /** The field holding the rating, as a DoublePoint and as doc values. */
+    public static final String FIELD = "overall";
+
+    private final DoubleRange[] ranges;
+
+    /**
+     * Creates a set of ranges.
+     *
+     * @param ranges the ranges, labelled; a rating in several ranges is counted in each of them.
+     */
+    public RatingFacets(DoubleRange... ranges) {
+        if (ranges.length == 0) {
+            throw new IllegalArgumentException("Need at least one rating range");
+        }
+        this.ranges = ranges.clone();
+    }
+
+    /**
+     * @return the good (3 to 5) and bad (0 to just under 3) ranges of the numeric query.
+     */
+    public static RatingFacets goodAndBad() {
+        return new RatingFacets(
+                new DoubleRange("good", 3.0, true, 5.0, true),
+                new DoubleRange("bad", 0.0, true, 3.0, false));
+    }
+
+    /**
+     * @return one range per star, labelled as the ratings were in the taxonomy ("1.0" to "5.0"),
+     *         each from its star up to just under the next one.
+     */
+    public static RatingFacets stars() {
+        DoubleRange[] stars = new DoubleRange[ProductSummary.MAX_RATING];
+        for (int star = 1; star <= ProductSummary.MAX_RATING; star++) {
+            stars[star - 1] = new DoubleRange(String.valueOf((double) star), star, true,
+                    star == ProductSummary.MAX_RATING ? star : star + 1, star == ProductSummary.MAX_RATING);
+        }
+        return new RatingFacets(stars);
+    }
+
+    /**
+     * Parses ranges written as "label:min-max,label:min-max", e.g. "low:1-2.5,high:3-5".
+     * Both ends are included.
+     *
+     * @param spec the ranges.
+     * @return the ranges.
+     * @throws IllegalArgumentException if a range cannot be parsed.
+     */
+    public static RatingFacets parse(String spec) {
+        List<DoubleRange> ranges = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String[] labelAndBounds = part.trim().split(":");
+            String[] bounds = labelAndBounds.length == 2 ? labelAndBounds[1].split("-") : new String[0];
+            if (bounds.length != 2) {
+                throw new IllegalArgumentException("Expected label:min-max, got '" + part.trim() + "'");
+            }
+            ranges.add(new DoubleRange(labelAndBounds[0].trim(), Double.parseDouble(bounds[0].trim()), true,
+                    Double.parseDouble(bounds[1].trim()), true));
+        }
+        return new RatingFacets(ranges.toArray(new DoubleRange[0]));
+    }
+
+    /**
+     * Counts the hits of a query in each range.
+     *
+     * @param hits the hits.
+     * @param schema the schema of the index, which decides how the rating doc values are read.
+     * @return the counts, under the dimension {@link #FIELD}.
+     * @throws IOException if the doc values cannot be read.
+     */
+    public Facets counts(FacetsCollector hits, IndexSchema schema) throws IOException {
+        if (schema.hasDoubleRatings()) {
+            return new DoubleRangeFacetCounts(FIELD, hits, ranges);
+        }
+        // the old doc values hold the rating truncated to a whole star
+        LongRange[] longRanges = new LongRange[ranges.length];
+        for (int i = 0; i < ranges.length; i++) {
+            longRanges[i] = new LongRange(ranges[i].label, (long) Math.ceil(ranges[i].min), true,
+                    (long) Math.floor(ranges[i].max), true);
+        }
+        return new LongRangeFacetCounts(FIELD, hits, longRanges);
+    }
+
+    /**
+     * Returns the query matching the ratings of one range, to drill down into it.
+     *
+     * @param label the label of the range.
+     * @return the range query on the rating points, or a query matching nothing if there is no
+     *         range with that label, as drilling down into a rating missing from the taxonomy did.
+     */
+    public Query rangeQuery(String label) {
+        for (DoubleRange range : ranges) {
+            if (range.label.equals(label)) {
+                // min and max are already adjusted to inclusive bounds
+                return DoublePoint.newRangeQuery(FIELD, range.min, range.max);
+            }
+        }
+        return new MatchNoDocsQuery("No rating range " + label + " in " + this);
+    }
+
+    /**
+     * Counts every facet dimension of some hits: the categorical dimensions, from the schema's
+     * {@link FacetBackend}, followed by the rating per star when the index has no categorical facet for it.
+     *
+     * @param searcher the searcher the hits come from.
+     * @param taxoReader the taxonomy reader matching the searcher.
+     * @param config the facets configuration of the index.
+     * @param hits the hits.
+     * @param schema the schema of the index.
+     * @param topN the number of values per categorical dimension.
+     * @return the counts per dimension.
+     * @throws IOException if the index cannot be read.
+     */
+    public static List<FacetResult> allDims(IndexSearcher searcher, TaxonomyReader taxoReader, FacetsConfig config,
+                                            FacetsCollector hits, IndexSchema schema, int topN) throws IOException {
+        Facets categories = schema.getFacetBackend().counts(searcher, taxoReader, config, hits);
+        List<FacetResult> dims = new ArrayList<>(categories.getAllDims(topN));
+        if (schema.hasDoubleRatings()) {
+            FacetResult stars = starCounts(hits, schema);
+            if (stars.labelValues.length > 0) {
+                dims.add(stars);
+            }
+        }
+        return dims;
+    }
+
+    /**
+     * Counts some hits per star, listing only the stars some hit has, the way the taxonomy
+     * facet of the rating listed them.
+     *
+     * @param hits the hits.
+     * @param schema the schema of the index.
+     * @return the counts, in star order.
+     * @throws IOException if the doc values cannot be read.
+     */
+    public static FacetResult starCounts(FacetsCollector hits, IndexSchema schema) throws IOException {
+        FacetResult stars = stars().counts(hits, schema).getAllChildren(FIELD);
+        LabelAndValue[] rated = Arrays.stream(stars.labelValues).filter(lv -> lv.value.intValue() > 0).toArray(LabelAndValue[]::new);
+        return new FacetResult(FIELD, new String[0], stars.value, rated, rated.length);
+    }
+
+    public DoubleRange[] getRanges() {return ranges.clone();}
+
+    @Override
+    public String toString() {
+        return Arrays.toString(ranges);
+    }
+}
@@ -0,0 +1,145 @@
+package org.example;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+
+import java.io.IOException;
+
+/**
+ * Pages through the hits of a query in a chosen order. Each page continues after the last
+ * hit of the previous one with searchAfter, so a page only keeps the hits of that page in
+ * its priority queue instead of every hit up to it, however deep the user goes.
+ * <p>
+ * When the index is sorted in the same order as the pages (see {@link IndexSchema#setIndexSort}),
+ * the documents already come in page order and collection stops once a page is full, so
+ * sorted pages do not visit every hit of the query either.
+ */
+public class ResultPager {
+
+    /**
+     * The orders hits can be listed in.
+     */
+    public enum SortMode {
+        /** Best match first. */
+        RELEVANCE,
+        /** Highest rating first. */
+        OVERALL,
+        /** Newest first, by month. */
+        DATE,
+        /** By product id. */
+        ASIN,
+        /** By product id, then newest first, then highest rating first. */
+        PRODUCT;
+
+        /**
+         * Returns the sort of this mode. Index sorts are built from it too, so a search in
+         * this order can tell the index is already sorted that way.
+         *
+         * @param schema the schema of the index, which decides the type of the rating doc values.
+         * @return the sort.
+         */
+        public Sort sort(IndexSchema schema) {
+            SortField.Type ratingType = schema.hasDoubleRatings() ? SortField.Type.DOUBLE : SortField.Type.LONG;
+            switch (this) {
+                case OVERALL:
+                    return new Sort(new SortField("overall", ratingType, true));
+                case DATE:
+                    return new Sort(new SortField(ReviewDocumentBuilder.YEAR_MONTH_FIELD, SortField.Type.LONG, true));
+                case ASIN:
+                    return new Sort(new SortField("asin", SortField.Type.STRING));
+                case PRODUCT:
+                    return new Sort(new SortField("asin", SortField.Type.STRING),
+                            new SortField(ReviewDocumentBuilder.YEAR_MONTH_FIELD, SortField.Type.LONG, true),
+                            new SortField("overall", ratingType, true));
+                default:
+                    return Sort.RELEVANCE;
+            }
+        }
+
+        /**
+         * Parses a mode name, ignoring case.
+         *
+         * @param name e.g. "overall".
+         * @return the mode, or null if the name is empty or unknown.
+         */
+        public static SortMode parse(String name) {
+            for (SortMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name.trim())) {
+                    return mode;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final IndexSearcher searcher;
+    private final Query query;
+    private final SortMode mode;
+    private final Sort sort;
+    private final int pageSize;
+    private ScoreDoc after;
+    private int page;
+    private boolean exhausted;
+
+    /**
+     * Starts paging at the first page.
+     *
+     * @param searcher the searcher; all pages must come from the same one, as the cursor holds a docID.
+     * @param schema the schema of the searcher's index.
+     * @param query the query.
+     * @param mode the order of the hits.
+     * @param pageSize the number of hits per page.
+     */
+    public ResultPager(IndexSearcher searcher, IndexSchema schema, Query query, SortMode mode, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        this.searcher = searcher;
+        this.query = query;
+        this.mode = mode;
+        this.sort = mode.sort(schema);
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Returns the next page of hits.
+     *
+     * @return the hits of the page, with FieldDocs unless sorting by relevance; empty once every hit was returned.
+     * @throws IOException if the index cannot be read.
+     */
+    public TopDocs next() throws IOException {
+        if (exhausted) {
+            return new TopDocs(new TotalHits(0, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO), new ScoreDoc[0]);
+        }
+        TopDocs topDocs;
+        if (mode == SortMode.RELEVANCE) {
+            topDocs = searcher.searchAfter(after, query, pageSize);
+        } else {
+            topDocs = searcher.searchAfter((FieldDoc) after, query, pageSize, sort);
+        }
+        if (topDocs.scoreDocs.length < pageSize) {
+            exhausted = true;
+        }
+        if (topDocs.scoreDocs.length > 0) {
+            after = topDocs.scoreDocs[topDocs.scoreDocs.length - 1];
+            page++;
+        }
+        return topDocs;
+    }
+
+    /** @return false once a page came back with fewer hits than the page size. */
+    public boolean hasNext() {return !exhausted;}
+
+    /** @return the number of pages returned so far. */
+    public int getPage() {return page;}
+
+    public SortMode getMode() {return mode;}
+
+    public int getPageSize() {return pageSize;}
+}
@@ -0,0 +1,183 @@
+package org.example;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads the fields of a page of hits that the caller asks for. The short fields (asin,
+ * overall, year, month, reviewerID) are read from doc values, and stored fields are only
+ * read for the others, such as reviewText and summary, so rendering a page of hits does
+ * not decompress a block of stored fields per hit just to show a product id and a rating.
+ * <p>
+ * Hits are read in docID order, segment by segment, which is the order doc values are read
+ * forward in. A field missing from the doc values of a segment, e.g. reviewerID in an index
+ * written before it had doc values, is read from the stored fields instead.
+ */
+public class ResultProjection {
+
+    /** The fields that can be read from doc values. */
+    public static final Set<String> DOC_VALUES_FIELDS = Set.of("asin", "overall", "year", "month", "reviewerID");
+
+    private final IndexSearcher searcher;
+    private final boolean doubleRatings;
+    private final String[] fields;
+
+    /**
+     * Creates a projection of some fields.
+     *
+     * @param searcher the searcher the hits come from.
+     * @param schema the schema of the index, which decides how the rating doc values are read.
+     * @param fields the fields to load, e.g. "asin", "overall", "reviewText".
+     */
+    public ResultProjection(IndexSearcher searcher, IndexSchema schema, String... fields) {
+        this.searcher = searcher;
+        this.doubleRatings = schema.hasDoubleRatings();
+        this.fields = fields.clone();
+    }
+
+    /**
+     * Loads the fields of some hits.
+     *
+     * @param hits the hits, in any order.
+     * @return a document per hit, in the order of the hits, holding the requested fields the
+     *         hit has with the same string values as its stored fields.
+     * @throws IOException if the index cannot be read.
+     */
+    public Document[] documents(ScoreDoc[] hits) throws IOException {
+        Document[] documents = new Document[hits.length];
+        Integer[] order = new Integer[hits.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(hits[a].doc, hits[b].doc));
+
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        StoredFields storedFields = null;
+        LeafReaderContext leaf = null;
+        FieldReader[] readers = new FieldReader[fields.length];
+        Set<String> storedOnly = new HashSet<>();
+        for (int i : order) {
+            int doc = hits[i].doc;
+            if (leaf == null || doc >= leaf.docBase + leaf.reader().maxDoc()) {
+                // doc values iterators only go forward, so they are opened once per segment
+                leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+                for (int f = 0; f < fields.length; f++) {
+                    readers[f] = FieldReader.open(leaf.reader(), fields[f], doubleRatings);
+                }
+            }
+            Document document = new Document();
+            String[] values = new String[fields.length];
+            storedOnly.clear();
+            for (int f = 0; f < fields.length; f++) {
+                values[f] = readers[f] == null ? null : readers[f].read(doc - leaf.docBase);
+                if (values[f] == null) {
+                    storedOnly.add(fields[f]);
+                }
+            }
+            Document stored = null;
+            if (!storedOnly.isEmpty()) {
+                if (storedFields == null) {
+                    storedFields = searcher.storedFields();
+                }
+                stored = storedFields.document(doc, storedOnly);
+            }
+            for (int f = 0; f < fields.length; f++) {
+                String value = values[f] != null ? values[f] : stored.get(fields[f]);
+                if (value != null) {
+                    document.add(new StoredField(fields[f], value));
+                }
+            }
+            documents[i] = document;
+        }
+        return documents;
+    }
+
+    /**
+     * Reads the string value of one field of the documents of a segment from doc values.
+     */
+    private abstract static class FieldReader {
+
+        /**
+         * @param segmentDoc a document of the segment, not lower than the one of the previous call.
+         * @return the value, or null if it has to be read from the stored fields.
+         */
+        abstract String read(int segmentDoc) throws IOException;
+
+        // null if the segment has no doc values for the field
+        static FieldReader open(LeafReader reader, String field, boolean doubleRatings) throws IOException {
+            switch (field) {
+                case "asin":
+                case "reviewerID": {
+                    SortedDocValues values = reader.getSortedDocValues(field);
+                    if (values == null) {
+                        return null;
+                    }
+                    return new FieldReader() {
+                        @Override
+                        String read(int segmentDoc) throws IOException {
+                            return values.advanceExact(segmentDoc) ? values.lookupOrd(values.ordValue()).utf8ToString() : null;
+                        }
+                    };
+                }
+                case "overall": {
+                    NumericDocValues values = reader.getNumericDocValues(field);
+                    if (values == null) {
+                        return null;
+                    }
+                    // printed the way the stored double is; old indexes only have the whole number of stars
+                    return new FieldReader() {
+                        @Override
+                        String read(int segmentDoc) throws IOException {
+                            if (!values.advanceExact(segmentDoc)) {
+                                return null;
+                            }
+                            return String.valueOf(doubleRatings ? Double.longBitsToDouble(values.longValue()) : (double) values.longValue());
+                        }
+                    };
+                }
+                case "year":
+                case "month": {
+                    NumericDocValues values = reader.getNumericDocValues(ReviewDocumentBuilder.YEAR_MONTH_FIELD);
+                    if (values == null) {
+                        return null;
+                    }
+                    boolean year = field.equals("year");
+                    return new FieldReader() {
+                        @Override
+                        String read(int segmentDoc) throws IOException {
+                            if (!values.advanceExact(segmentDoc)) {
+                                return null; // no valid date, the stored text is kept as it was
+                            }
+                            long yearMonth = values.longValue();
+                            return year ? pad(yearMonth / 100, 4) : pad(yearMonth % 100, 2);
+                        }
+                    };
+                }
+                default:
+                    return null;
+            }
+        }
+
+        private static String pad(long value, int digits) {
+            String text = Long.toString(value);
+            while (text.length() < digits) {
+                text = "0" + text;
+            }
+            return text;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package org.example;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleDocValuesField;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.util.BytesRefBuilder;
+
+/**
+ * Builds the Lucene document of a review, reusing the same Document and Field instances
+ * for every review. Values are swapped with setStringValue/setDoubleValue, so bulk indexing
+ * allocates almost nothing per review besides the facet fields, which go to the taxonomy
+ * or to sorted set doc values depending on the schema's {@link FacetBackend}.
+ * Instances are not thread-safe; the Indexer keeps one per indexing thread.
+ */
+public class ReviewDocumentBuilder {
+
+    /** Field holding "reviewerID|asin", the identity of a review used to update it in place. */
+    public static final String REVIEW_KEY_FIELD = "reviewKey";
+    /** Doc values field holding the review date as year * 100 + month, e.g. 201405. */
+    public static final String YEAR_MONTH_FIELD = "yearMonth";
+
+    private static final int FIRST_CACHED_YEAR = 1900;
+    private static final String[] YEARS = new String[256];
+    private static final String[] MONTHS = new String[13];
+    private static final String[] DAYS = new String[32];
+
+    static {
+        for (int month = 1; month <= 12; month++) {
+            MONTHS[month] = String.format("%02d", month);
+        }
+        for (int day = 1; day <= 31; day++) {
+            DAYS[day] = String.format("%02d", day);
+        }
+    }
+
+    private final Document doc = new Document();
+    private final boolean catchAllField;
+
+    private final Field[] everything = new Field[7];
+    private final Field reviewKeyField = new StringField(REVIEW_KEY_FIELD, "", Field.Store.NO);
+    private String reviewKey;
+    private final Field reviewerIdField = new StringField("reviewerID", "", Field.Store.YES);
+    private final Field reviewerIdDocValues = new SortedDocValuesField("reviewerID", new BytesRefBuilder().get());
+    private final BytesRefBuilder reviewerIdBytes = new BytesRefBuilder();
+    private final Field asinField = new StringField("asin", "", Field.Store.YES);
+    private final Field asinDocValues = new SortedDocValuesField("asin", new BytesRefBuilder().get());
+    private final BytesRefBuilder asinBytes = new BytesRefBuilder();
+    private final Field reviewerNameField;
+    private final Field reviewTextField;
+    private final DoublePoint overallPoint = new DoublePoint("overall", 0.0);
+    private final Field overallStored = new StoredField("overall", 0.0);
+    private final Field overallDocValues;
+    private final boolean doubleRatings;
+    private final FacetBackend facetBackend;
+    private final Field summaryField = new TextField("summary", "", Field.Store.YES);
+    private final Field yearField = new StringField("year", "", Field.Store.YES);
+    private final Field monthField = new StringField("month", "", Field.Store.YES);
+    private final Field dayField = new StringField("day", "", Field.Store.NO);
+    private final Field yearMonthDocValues = new NumericDocValuesField(YEAR_MONTH_FIELD, 0L);
+    private final ReviewVectors reviewVectors;
+    private final KnnFloatVectorField reviewVectorField;
+
+    // the ratings take a handful of distinct values, so their text is computed once per value
+    private double lastOverall = Double.NaN;
+    private String lastOverallText;
+
+    /**
+     * Creates a builder with its own set of reusable fields, for the default schema.
+     */
+    public ReviewDocumentBuilder() {
+        this(new IndexSchema());
+    }
+
+    /**
+     * Creates a builder with its own set of reusable fields.
+     *
+     * @param schema the schema deciding which fields are written.
+     */
+    public ReviewDocumentBuilder(IndexSchema schema) {
+        this.catchAllField = schema.hasCatchAllField();
+        // without the catch-all field, "everything:" searches the name itself, so its words must be terms
+        this.reviewerNameField = catchAllField
+                ? new StringField("reviewerName", "", Field.Store.YES)
+                : new TextField("reviewerName", "", Field.Store.YES);
+        this.doubleRatings = schema.hasDoubleRatings();
+        this.facetBackend = schema.getFacetBackend();
+        this.overallDocValues = doubleRatings ? new DoubleDocValuesField("overall", 0.0) : new NumericDocValuesField("overall", 0L);
+        this.reviewTextField = new Field("reviewText", "", reviewTextType(schema));
+        this.reviewVectors = schema.hasReviewVectors() ? new ReviewVectors(schema.getReviewVectorDimension()) : null;
+        this.reviewVectorField = schema.hasReviewVectors()
+                ? new KnnFloatVectorField(ReviewVectors.FIELD, new float[schema.getReviewVectorDimension()], ReviewVectors.SIMILARITY)
+                : null;
+        for (int i = 0; i < everything.length; i++) {
+            everything[i] = new TextField(IndexSchema.CATCH_ALL_FIELD, "", Field.Store.NO);
+        }
+    }
+
+    /**
+     * Returns the field type of reviewText: stored and tokenized, with positions for phrase
+     * queries, and offsets or term vectors if the schema asks for them.
+     *
+     * @param schema the index schema.
+     * @return the frozen field type.
+     */
+    static FieldType reviewTextType(IndexSchema schema) {
+        FieldType type = new FieldType();
+        type.setStored(true);
+        type.setTokenized(true);
+        type.setStoreTermVectors(schema.hasTermVectors());
+        type.setIndexOptions(schema.hasPostingsOffsets()
+                ? IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS  // lets the highlighter read offsets from the postings
+                : IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+        type.freeze();
+        return type;
+    }
+
+    /**
+     * Fills the reusable document with the fields of a review. The returned document is
+     * only valid until the next call; it must be handed to the IndexWriter before that.
+     *
+     * @param review the review to convert.
+     * @return the reused document holding the review's fields.
+     */
+    public Document build(ReviewRecord review) {
+        doc.clear();
+
+        String reviewerID = review.getReviewerID();
+        String asin = review.getAsin();
+        String reviewerName = review.getReviewerName();
+        String reviewText = review.getReviewText();
+        double overall = review.getOverall();
+        String summary = review.getSummary();
+        String cleanReviewTime = review.getCleanReviewTime();
+        String overallText = overallText(overall);
+
+        if (catchAllField) {
+            addEverything(0, reviewerID);
+            addEverything(1, asin);
+            addEverything(2, reviewerName);
+            addEverything(3, reviewText);
+            addEverything(4, overallText);
+            addEverything(5, summary);
+            addEverything(6, cleanReviewTime);
+        }
+
+        if (!reviewerID.isEmpty()) {
+            reviewerIdField.setStringValue(reviewerID);
+            doc.add(reviewerIdField);
+            reviewerIdBytes.copyChars(reviewerID);
+            reviewerIdDocValues.setBytesValue(reviewerIdBytes.get()); //for rendering hits without stored fields
+            doc.add(reviewerIdDocValues);
+        }
+
+        reviewKey = null;
+        if (!reviewerID.isEmpty() && !asin.isEmpty()) {
+            reviewKey = reviewerID + '|' + asin;
+            reviewKeyField.setStringValue(reviewKey);
+            doc.add(reviewKeyField);
+        }
+
+        // asin as a product identifier, stored and sortable
+        if (!asin.isEmpty()) {
+            asinField.setStringValue(asin);
+            doc.add(asinField);
+            asinBytes.copyChars(asin);
+            asinDocValues.setBytesValue(asinBytes.get());  // For sorting or faceted search
+            doc.add(asinDocValues);
+            doc.add(facetBackend.facetField("asin", asin));
+        }
+
+        if (!reviewerName.isEmpty()) {
+            reviewerNameField.setStringValue(reviewerName);
+            doc.add(reviewerNameField);
+        }
+
+        // reviewText - main review content, indexed with tokenization for search
+        if (!reviewText.isEmpty()) {
+            reviewTextField.setStringValue(reviewText);
+            doc.add(reviewTextField);
+            // the writer copies the vector, so the field's array is refilled for the next review
+            if (reviewVectors != null && reviewVectors.vector(reviewText, reviewVectorField.vectorValue())) {
+                doc.add(reviewVectorField); //for similar reviews and k-NN
+            }
+        }
+
+        overallPoint.setDoubleValue(overall);
+        doc.add(overallPoint); //for range queries
+        overallStored.setDoubleValue(overall);
+        doc.add(overallStored);
+        if (doubleRatings) {
+            overallDocValues.setDoubleValue(overall);
+            doc.add(overallDocValues); //for range faceting and sorting, also replaces the categorical facet
+        } else {
+            overallDocValues.setLongValue((long) overall);
+            doc.add(overallDocValues); //for range faceting
+            doc.add(facetBackend.facetField("overall", overallText)); //for categorical facets
+        }
+
+        if (!summary.isEmpty()) {
+            summaryField.setStringValue(summary);
+            doc.add(summaryField);
+        }
+
+        String year = year(cleanReviewTime);
+        String month = month(cleanReviewTime);
+        yearField.setStringValue(year);
+        doc.add(yearField);
+        monthField.setStringValue(month);
+        doc.add(monthField);
+        doc.add(facetBackend.facetField("date", year, month));
+        String day = catchAllField ? null : day(cleanReviewTime);
+        if (day != null) {
+            dayField.setStringValue(day);
+            doc.add(dayField); //for "everything:" queries on the day, which the catch-all field matched
+        }
+        int yearMonth = yearMonth(cleanReviewTime);
+        if (yearMonth > 0) {
+            yearMonthDocValues.setLongValue(yearMonth);
+            doc.add(yearMonthDocValues); //for the per-product summaries
+        }
+
+        return doc;
+    }
+
+    /**
+     * Returns the key of the last built review, as indexed in {@link #REVIEW_KEY_FIELD}.
+     *
+     * @return the review key, or null if the review has no reviewerID or no asin.
+     */
+    public String reviewKey() {
+        return reviewKey;
+    }
+
+    private void addEverything(int slot, String value) {
+        everything[slot].setStringValue(value);
+        doc.add(everything[slot]);
+    }
+
+    private String overallText(double overall) {
+        if (Double.compare(overall, lastOverall) != 0) {
+            lastOverall = overall;
+            lastOverallText = String.valueOf(overall);
+        }
+        return lastOverallText;
+    }
+
+    // cleanReviewTime is yyyy-MM-dd; years, months and days come from small lookup tables instead of substrings
+    private static String year(String cleanReviewTime) {
+        int year = digits(cleanReviewTime, 0, 4);
+        int slot = year - FIRST_CACHED_YEAR;
+        if (slot < 0 || slot >= YEARS.length) {
+            return cleanReviewTime.substring(0, 4);
+        }
+        String cached = YEARS[slot];
+        if (cached == null) {
+            cached = cleanReviewTime.substring(0, 4);
+            YEARS[slot] = cached; // racy but idempotent
+        }
+        return cached;
+    }
+
+    private static String month(String cleanReviewTime) {
+        int month = digits(cleanReviewTime, 5, 7);
+        if (month < 1 || month > 12) {
+            return cleanReviewTime.substring(5, 7);
+        }
+        return MONTHS[month];
+    }
+
+    private static String day(String cleanReviewTime) {
+        int day = digits(cleanReviewTime, 8, 10);
+        return day < 1 || day > 31 ? null : DAYS[day];
+    }
+
+    // the date as year * 100 + month, or -1 if it is not yyyy-MM
+    private static int yearMonth(String cleanReviewTime) {
+        int year = digits(cleanReviewTime, 0, 4);
+        int month = digits(cleanReviewTime, 5, 7);
+        return year < 0 || month < 1 || month > 12 ? -1 : year * 100 + month;
+    }
+
+    private static int digits(String text, int from, int to) {
+        if (text.length() < to) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a review file line by line straight from its FileChannel, keeping track of the byte
+ * offset reached. The offset lets an indexing run record how far a file was ingested and a
+ * later run continue from there.
+ * The current line is exposed as raw UTF-8 bytes in a reused buffer; {@link #line()} decodes it.
+ */
+public class ReviewLineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private byte[] lineBytes = new byte[1024];
+    private int lineLength;
+    private long offset;
+    private long lineNumber;
+    private boolean endOfFile;
+
+    /**
+     * Opens a file for reading, starting at the given byte offset.
+     *
+     * @param reviewFile the file to read.
+     * @param startOffset the byte offset of the first line to read; must be at a line start.
+     * @param linesBefore the number of lines before startOffset, so line numbers stay file-wide.
+     * @throws IOException if the file cannot be opened.
+     */
+    public ReviewLineReader(Path reviewFile, long startOffset, long linesBefore) throws IOException {
+        this.channel = FileChannel.open(reviewFile, StandardOpenOption.READ);
+        this.channel.position(startOffset);
+        this.offset = startOffset;
+        this.lineNumber = linesBefore;
+        this.buffer.flip(); // start empty
+    }
+
+    /**
+     * Advances to the next line. Line terminators (\n or \r\n) are not part of the line.
+     *
+     * @return false once the end of the file has been reached.
+     * @throws IOException if the file cannot be read.
+     */
+    public boolean next() throws IOException {
+        lineLength = 0;
+        boolean readAnything = false;
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                if (endOfFile || !fill()) {
+                    endOfFile = true;
+                    if (readAnything) {
+                        lineNumber++;
+                    }
+                    return readAnything;
+                }
+            }
+            byte b = buffer.get();
+            offset++;
+            readAnything = true;
+            if (b == '\n') {
+                if (lineLength > 0 && lineBytes[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                lineNumber++;
+                return true;
+            }
+            if (lineLength == lineBytes.length) {
+                lineBytes = Arrays.copyOf(lineBytes, lineBytes.length * 2);
+            }
+            lineBytes[lineLength++] = b;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        buffer.clear();
+        int read = channel.read(buffer);
+        buffer.flip();
+        return read > 0;
+    }
+
+    /** @return the UTF-8 bytes of the current line; only the first {@link #lineLength()} are valid. */
+    public byte[] lineBytes() {return lineBytes;}
+
+    /** @return the number of bytes in the current line. */
+    public int lineLength() {return lineLength;}
+
+    /** @return true if the current line has only whitespace. */
+    public boolean isBlank() {
+        for (int i = 0; i < lineLength; i++) {
+            byte b = lineBytes[i];
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the current line decoded as a String. */
+    public String line() {
+        return new String(lineBytes, 0, lineLength, StandardCharsets.UTF_8);
+    }
+
+    /** @return the byte offset just after the current line, where the next line starts. */
+    public long offset() {return offset;}
+
+    /** @return the line number of the current line in the file, starting at 1. */
+    public long lineNumber() {return lineNumber;}
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,80 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Mutable holder for the review fields the Indexer needs.
+ * The streaming parser refills the same instance for every review instead of
+ * building a JsonNode tree per line.
+ */
+public class ReviewRecord {
+
+    String reviewerID = "";
+    String asin = "";
+    String reviewerName = "";
+    String reviewText = "";
+    double overall;
+    String summary = "";
+    String cleanReviewTime = "";
+
+    /**
+     * Resets every field to the value a missing JSON property would produce.
+     */
+    public void clear() {
+        reviewerID = "";
+        asin = "";
+        reviewerName = "";
+        reviewText = "";
+        overall = 0.0;
+        summary = "";
+        cleanReviewTime = "";
+    }
+
+    /**
+     * Copies the review fields out of a parsed JSON tree.
+     *
+     * @param reviewNode the JSON node representing a review.
+     * @return this instance.
+     */
+    public ReviewRecord copyFrom(JsonNode reviewNode) {
+        reviewerID = reviewNode.path("reviewerID").asText();
+        asin = reviewNode.path("asin").asText();
+        reviewerName = reviewNode.path("reviewerName").asText();
+        reviewText = reviewNode.path("reviewText").asText();
+        overall = reviewNode.path("overall").asDouble();
+        summary = reviewNode.path("summary").asText();
+        cleanReviewTime = reviewNode.path("cleanReviewTime").asText();
+        return this;
+    }
+
+    /**
+     * Creates an independent copy, for handing a review over to another thread.
+     *
+     * @return a new record with the same values.
+     */
+    public ReviewRecord copy() {
+        ReviewRecord copy = new ReviewRecord();
+        copy.reviewerID = reviewerID;
+        copy.asin = asin;
+        copy.reviewerName = reviewerName;
+        copy.reviewText = reviewText;
+        copy.overall = overall;
+        copy.summary = summary;
+        copy.cleanReviewTime = cleanReviewTime;
+        return copy;
+    }
+
+    public String getReviewerID() {return reviewerID;}
+
+    public String getAsin() {return asin;}
+
+    public String getReviewerName() {return reviewerName;}
+
+    public String getReviewText() {return reviewText;}
+
+    public double getOverall() {return overall;}
+
+    public String getSummary() {return summary;}
+
+    public String getCleanReviewTime() {return cleanReviewTime;}
+}
@@ -0,0 +1,91 @@
+package org.example;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.uhighlight.LengthGoalBreakIterator;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+
+import java.io.IOException;
+import java.text.BreakIterator;
+import java.util.Locale;
+
+/**
+ * Builds short highlighted snippets of the hits of a query, in place of printing whole
+ * review bodies. The snippets come from the {@link UnifiedHighlighter}, which reads term
+ * offsets from the postings when the index has them (see {@link IndexSchema#setPostingsOffsets})
+ * and otherwise re-analyzes the stored text of each hit.
+ */
+public class ReviewSnippets {
+
+    /** The number of passages joined into one snippet. */
+    static final int DEFAULT_PASSAGES = 2;
+
+    /** The length a passage is grown or cut to, in characters, keeping sentence boundaries where possible;
+     *  about a third of it comes before the first match. */
+    static final int PASSAGE_LENGTH = 120;
+
+    private final UnifiedHighlighter highlighter;
+    private final int passages;
+
+    /**
+     * Creates a snippet builder with {@link #DEFAULT_PASSAGES} passages per snippet.
+     *
+     * @param searcher the searcher the hits were found with.
+     * @param analyzer the analyzer the fields were indexed with, used when the postings have no offsets.
+     */
+    public ReviewSnippets(IndexSearcher searcher, Analyzer analyzer) {
+        this(searcher, analyzer, DEFAULT_PASSAGES);
+    }
+
+    /**
+     * Creates a snippet builder.
+     *
+     * @param searcher the searcher the hits were found with.
+     * @param analyzer the analyzer the fields were indexed with, used when the postings have no offsets.
+     * @param passages the number of passages joined into one snippet.
+     */
+    public ReviewSnippets(IndexSearcher searcher, Analyzer analyzer, int passages) {
+        // terms of "everything:" clauses are highlighted in the real fields as well
+        this.highlighter = new UnifiedHighlighter(UnifiedHighlighter.builder(searcher, analyzer)
+                .withFieldMatcher(field -> true)
+                .withBreakIterator(() -> LengthGoalBreakIterator.createClosestToLength(
+                        BreakIterator.getSentenceInstance(Locale.ROOT), PASSAGE_LENGTH, 0.33f))) {
+            @Override
+            protected OffsetSource getOffsetSource(String field) {
+                // the term vectors of older indexes were written without offsets, so they cannot be highlighted from
+                switch (super.getOffsetSource(field)) {
+                    case POSTINGS:
+                    case POSTINGS_WITH_TERM_VECTORS:
+                        return OffsetSource.POSTINGS;
+                    default:
+                        return OffsetSource.ANALYSIS;
+                }
+            }
+        };
+        this.passages = passages;
+    }
+
+    /**
+     * Returns the snippet of every hit, in the order of the hits. Hits without a matching
+     * passage get the first sentences of the field instead.
+     *
+     * @param field the field the query was run on; fields that are not stored text fall back to reviewText.
+     * @param query the query that found the hits.
+     * @param topDocs the hits.
+     * @return one snippet per hit, null where the hit has no value for the field.
+     * @throws IOException if the index cannot be read.
+     */
+    public String[] snippets(String field, Query query, TopDocs topDocs) throws IOException {
+        return highlighter.highlight(snippetField(field), query, topDocs, passages);
+    }
+
+    /**
+     * @param field the field a query was run on.
+     * @return the stored text field its snippets are taken from.
+     */
+    static String snippetField(String field) {
+        return field.equals("summary") ? "summary" : "reviewText";
+    }
+}
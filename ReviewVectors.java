@@ -0,0 +1,235 @@
+package org.example;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99Codec;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Turns review texts into fixed-size vectors for nearest-neighbour search, without a model
+ * to train or download: the words the index analyzer makes of reviewText are hashed into
+ * the dimensions of the vector, with a second hash choosing the sign so collisions cancel out
+ * on average, and each word weighs 1 + log(tf). Vectors are normalized to unit length, so
+ * their dot product is the cosine of the two texts.
+ * <p>
+ * The vectors are indexed in {@link #FIELD} when the schema asks for them, in an HNSW graph
+ * whose parameters are set with {@link IndexingOptions#setHnsw(int, int)}. Instances are not
+ * thread-safe; each document builder has its own.
+ */
+public class ReviewVectors {
+
+    /** The vector field of a review. */
+    public static final String FIELD = "reviewVector";
+    /** Dimensions of a vector, by default. */
+    public static final int DEFAULT_DIMENSION = 256;
+    /** The similarity of the vectors, the cosine since they have unit length. */
+    public static final VectorSimilarityFunction SIMILARITY = VectorSimilarityFunction.DOT_PRODUCT;
+
+    private final Analyzer analyzer;
+    private final int dimension;
+    private final Map<String, Integer> frequencies = new HashMap<>();
+
+    /**
+     * Creates vectors of a review index, made with the analyzer reviewText is indexed with.
+     *
+     * @param dimension the number of dimensions, as given by {@link IndexSchema#getReviewVectorDimension()}.
+     */
+    public ReviewVectors(int dimension) {
+        this(Indexer.createAnalyzer(), dimension);
+    }
+
+    /**
+     * @param analyzer the analyzer splitting texts into words, asked for the reviewText field.
+     * @param dimension the number of dimensions.
+     */
+    public ReviewVectors(Analyzer analyzer, int dimension) {
+        if (dimension < 1 || dimension > 1024) {
+            throw new IllegalArgumentException("dimension must be between 1 and 1024");
+        }
+        this.analyzer = analyzer;
+        this.dimension = dimension;
+    }
+
+    /**
+     * Creates the codec writing review vectors in an HNSW graph with the given parameters, and
+     * every other field as the default codec does.
+     *
+     * @param maxConn the number of neighbours of a node in the graph.
+     * @param beamWidth the number of candidates considered when inserting a node.
+     * @return the codec.
+     */
+    public static Lucene99Codec codec(int maxConn, int beamWidth) {
+        KnnVectorsFormat format = new Lucene99HnswVectorsFormat(maxConn, beamWidth);
+        return new Lucene99Codec() {
+            @Override
+            public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+                return FIELD.equals(field) ? format : super.getKnnVectorsFormatForField(field);
+            }
+        };
+    }
+
+    /**
+     * @param text a review text.
+     * @return its vector, or null if the text has no word to hash.
+     */
+    public float[] vector(String text) {
+        float[] vector = new float[dimension];
+        return vector(text, vector) ? vector : null;
+    }
+
+    /**
+     * Computes the vector of a text into an array, so bulk indexing can reuse it.
+     *
+     * @param text a review text.
+     * @param vector receives the vector; its length is the dimension.
+     * @return false, leaving the array zeroed, if the text has no word to hash.
+     */
+    public boolean vector(String text, float[] vector) {
+        Arrays.fill(vector, 0);
+        frequencies.clear();
+        try (TokenStream tokens = analyzer.tokenStream(NaiveBayesModel.FIELD, text)) {
+            CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+            tokens.reset();
+            while (tokens.incrementToken()) {
+                frequencies.merge(term.toString(), 1, Integer::sum);
+            }
+            tokens.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen reading a string
+        }
+        if (frequencies.isEmpty()) {
+            return false;
+        }
+        for (Map.Entry<String, Integer> word : frequencies.entrySet()) {
+            int hash = word.getKey().hashCode();
+            float weight = 1 + (float) Math.log(word.getValue());
+            // the low bits pick the dimension, a mixed high bit the sign
+            vector[Math.floorMod(hash, dimension)] += (hash * 0x9E3779B9) < 0 ? -weight : weight;
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return false; // every word cancelled out
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return true;
+    }
+
+    /**
+     * Creates the query for the reviews nearest to a text, through the HNSW graph.
+     *
+     * @param text the text.
+     * @param k the number of reviews.
+     * @param filter the reviews to search among, or null for all of them.
+     * @return the query, or null if the text has no word to hash.
+     */
+    public Query query(String text, int k, Query filter) {
+        float[] vector = vector(text);
+        return vector == null ? null : new KnnFloatVectorQuery(FIELD, vector, k, filter);
+    }
+
+    /**
+     * Finds the reviews most like a review of the index.
+     *
+     * @param searcher the searcher.
+     * @param doc the id of the review in the searcher's reader.
+     * @param k the number of similar reviews.
+     * @return up to k other reviews, most similar first; none if the review has no vector.
+     * @throws IOException if the index cannot be read.
+     */
+    public static TopDocs similarReviews(IndexSearcher searcher, int doc, int k) throws IOException {
+        float[] vector = storedVector(searcher.getIndexReader(), doc);
+        if (vector == null) {
+            return new TopDocs(new TotalHits(0, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0]);
+        }
+        // one more, for the review itself
+        TopDocs hits = searcher.search(new KnnFloatVectorQuery(FIELD, vector, k + 1), k + 1);
+        ScoreDoc[] others = Arrays.stream(hits.scoreDocs).filter(hit -> hit.doc != doc).limit(k).toArray(ScoreDoc[]::new);
+        return new TopDocs(new TotalHits(others.length, TotalHits.Relation.EQUAL_TO), others);
+    }
+
+    /**
+     * Finds the reviews nearest to a vector by comparing it to every vector of the index, the
+     * exact answer the HNSW graph approximates.
+     *
+     * @param reader the index.
+     * @param vector the vector.
+     * @param k the number of reviews.
+     * @param docs the reviews to search among, by top-level doc id, or null for all of them.
+     * @return up to k reviews, nearest first, scored as {@link KnnFloatVectorQuery} scores them.
+     * @throws IOException if the index cannot be read.
+     */
+    public static TopDocs exactNeighbours(IndexReader reader, float[] vector, int k, Bits docs) throws IOException {
+        // min-heap of the best k so far, the worst at its root
+        PriorityQueue<ScoreDoc> top = new PriorityQueue<>(k, (a, b) -> a.score != b.score
+                ? Float.compare(a.score, b.score) : Integer.compare(b.doc, a.doc));
+        for (LeafReaderContext leaf : reader.leaves()) {
+            FloatVectorValues values = leaf.reader().getFloatVectorValues(FIELD);
+            if (values == null) {
+                continue;
+            }
+            Bits liveDocs = leaf.reader().getLiveDocs();
+            for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+                if ((liveDocs != null && !liveDocs.get(doc)) || (docs != null && !docs.get(leaf.docBase + doc))) {
+                    continue;
+                }
+                float score = SIMILARITY.compare(vector, values.vectorValue());
+                if (top.size() < k) {
+                    top.add(new ScoreDoc(leaf.docBase + doc, score));
+                } else if (score > top.peek().score) {
+                    top.poll();
+                    top.add(new ScoreDoc(leaf.docBase + doc, score));
+                }
+            }
+        }
+        ScoreDoc[] hits = new ScoreDoc[top.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            hits[i] = top.poll();
+        }
+        return new TopDocs(new TotalHits(hits.length, TotalHits.Relation.EQUAL_TO), hits);
+    }
+
+    // the indexed vector of a review, or null if it has none
+    private static float[] storedVector(IndexReader reader, int doc) throws IOException {
+        LeafReaderContext leaf = reader.leaves().get(ReaderUtil.subIndex(doc, reader.leaves()));
+        FloatVectorValues values = leaf.reader().getFloatVectorValues(FIELD);
+        if (values == null || values.advance(doc - leaf.docBase) != doc - leaf.docBase) {
+            return null;
+        }
+        return values.vectorValue().clone();
+    }
+
+    public int getDimension() {return dimension;}
+
+    @Override
+    public String toString() {
+        return dimension + "-dimension hashed word vectors";
+    }
+}
@@ -0,0 +1,791 @@
+package org.example;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.facet.DrillDownQuery;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.taxonomy.FastTaxonomyFacetCounts;
+import org.apache.lucene.facet.taxonomy.SearcherTaxonomyManager.SearcherAndTaxonomy;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Micro-benchmarks for the search side: query latency of the faceted searches Facetery runs,
+ * against an index built from a directory of review files into a temporary directory.
+ * <p>
+ * Usage: SearchBenchmark (concurrency|drilldown|cache|summary|projection|paging|indexsort|ratings|facets|sampling|facetrequest|vectors) &lt;reviewDir&gt; [iterations]
+ */
+public class SearchBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final String DRILL_DOWN_YEAR = "2014";
+    private static final int PAGE_SIZE = 500;
+    private static final int PAGE_DEPTH = 25;
+    private static final int INDEXING_ROUNDS = 3;
+    private static final int PARITY_TOP_N = 10000;
+    private static final int VECTOR_QUERIES = 100;
+    private static final int NEIGHBOURS = 10;
+    private static final int[][] HNSW_SETTINGS = {{8, 50}, {16, 100}, {32, 200}};
+    private static final String[] QUERY_WORDS = {"good", "great", "bad", "quality", "price", "work", "love", "return", "recommend", "product"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: SearchBenchmark (concurrency|drilldown|cache|summary|projection|paging|indexsort|ratings|facets|sampling|facetrequest|vectors) <reviewDir> [iterations]");
+            return;
+        }
+        List<ReviewRecord> reviews = IndexingBenchmark.loadReviews(IndexingBenchmark.listReviewFiles(args[1]));
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        switch (args[0]) {
+            case "concurrency":
+                benchmarkConcurrency(reviews, iterations);
+                break;
+            case "drilldown":
+                benchmarkDrillDown(reviews, iterations);
+                break;
+            case "cache":
+                benchmarkCache(reviews, iterations);
+                break;
+            case "summary":
+                benchmarkSummaries(reviews, iterations);
+                break;
+            case "projection":
+                benchmarkProjection(reviews, iterations);
+                break;
+            case "paging":
+                benchmarkPaging(reviews, iterations);
+                break;
+            case "indexsort":
+                benchmarkIndexSort(reviews, iterations);
+                break;
+            case "ratings":
+                benchmarkRatings(reviews, iterations);
+                break;
+            case "facets":
+                benchmarkFacetBackends(reviews, iterations);
+                break;
+            case "sampling":
+                benchmarkSampling(reviews, iterations);
+                break;
+            case "facetrequest":
+                benchmarkFacetRequests(reviews, iterations);
+                break;
+            case "vectors":
+                benchmarkVectors(reviews, iterations);
+                break;
+            default:
+                System.out.println("Unknown benchmark: " + args[0]);
+        }
+    }
+
+    /**
+     * Compares searching every segment on the calling thread with searching slices of
+     * segments on 1, 2 and one-per-core threads. The index is built with a small RAM
+     * buffer so it has several segments to slice.
+     */
+    private static void benchmarkConcurrency(List<ReviewRecord> reviews, int iterations) throws IOException {
+        IndexingOptions manySegments = new IndexingOptions().setStreamingParser(true)
+                .setBulkLoadProfile(new BulkLoadProfile().setRamBufferMB(1));
+        int cores = Runtime.getRuntime().availableProcessors();
+        int sliceDocs = Math.max(1, reviews.size() / Math.max(2, cores * 2));
+
+        IndexingBenchmark.withTempIndex(reviews, manySegments, (indexDir, taxoDir) -> {
+            measureFacetedSearch("single thread", indexDir, taxoDir, null, iterations);
+            for (int threads : new int[]{1, 2, cores}) {
+                measureFacetedSearch(threads + " threads", indexDir, taxoDir,
+                        new SearchConcurrency().setThreads(threads).setSliceLimits(sliceDocs, 1), iterations);
+            }
+            measureFacetedSearch("virtual threads", indexDir, taxoDir,
+                    new SearchConcurrency().setVirtualThreads(true).setSliceLimits(sliceDocs, 1), iterations);
+        });
+    }
+
+    private static void measureFacetedSearch(String name, Path indexDir, Path taxoDir, SearchConcurrency concurrency,
+                                             int iterations) throws IOException {
+        try (SearchService service = new SearchService(indexDir.toString(), taxoDir.toString(), 0, concurrency)) {
+            SearcherAndTaxonomy current = service.acquire();
+            try {
+                IndexSearcher searcher = current.searcher;
+                measureLatency(name + " (" + searcher.getIndexReader().leaves().size() + " segments, "
+                                + (searcher.getSlices() == null ? 1 : searcher.getSlices().length) + " slices)",
+                        iterations, query -> facetedSearch(searcher, current.taxonomyReader, query));
+            } finally {
+                service.release(current);
+            }
+        }
+    }
+
+    /**
+     * Compares drilling into a year the way Facetery used to, one faceted search for the
+     * months and a second search for the hits, with a single DrillSideways pass that also
+     * returns the sideways counts of the other years.
+     */
+    private static void benchmarkDrillDown(List<ReviewRecord> reviews, int iterations) throws IOException {
+        String year = DRILL_DOWN_YEAR;
+        IndexingBenchmark.withTempIndex(reviews, new IndexingOptions().setStreamingParser(true), (indexDir, taxoDir) -> {
+            try (SearchService service = new SearchService(indexDir.toString(), taxoDir.toString(), 0)) {
+                SearcherAndTaxonomy current = service.acquire();
+                try {
+                    IndexSearcher searcher = current.searcher;
+                    TaxonomyReader taxoReader = current.taxonomyReader;
+                    measureLatency("multi-pass drill down", iterations, query -> {
+                        DrillDownQuery drillDownQuery = new DrillDownQuery(Indexer.getFconfig(), query);
+                        drillDownQuery.add("date", year);
+                        FacetsCollector facetsCollector = FacetedSearch.search(searcher, drillDownQuery, 10).getFacetsCollector();
+                        new FastTaxonomyFacetCounts(taxoReader, Indexer.getFconfig(), facetsCollector).getTopChildren(12, "date", year);
+                        searcher.search(drillDownQuery, 10);
+                    });
+                    measureLatency("DrillSideways drill down", iterations, query -> {
+                        FacetDrillDown navigation = new FacetDrillDown(searcher, taxoReader, Indexer.getFconfig(), query)
+                                .select("date", year);
+                        FacetDrillDown.Result result = navigation.search(10);
+                        for (String dim : FacetDrillDown.DIMS) {
+                            navigation.childCounts(result, dim, 10);
+                        }
+                    });
+                } finally {
+                    service.release(current);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compares counting the facets of every query again with serving repeated queries from a
+     * {@link FacetResultCache}, for both the plain faceted search and a drill down into a year.
+     */
+    private static void benchmarkCache(List<ReviewRecord> reviews, int iterations) throws IOException {
+        IndexingBenchmark.withTempIndex(reviews, new IndexingOptions().setStreamingParser(true), (indexDir, taxoDir) -> {
+            try (SearchService service = new SearchService(indexDir.toString(), taxoDir.toString(), 0)) {
+                SearcherAndTaxonomy current = service.acquire();
+                try {
+                    IndexSearcher searcher = current.searcher;
+                    TaxonomyReader taxoReader = current.taxonomyReader;
+                    IndexSchema schema = service.getSchema(current);
+                    FacetResultCache cache = new FacetResultCache();
+                    FacetSampler exact = new FacetSampler().setHitThreshold(Integer.MAX_VALUE);
+                    measureLatency("uncached facets", iterations, query -> facetedSearch(searcher, taxoReader, query));
+                    measureLatency("cached facets", iterations,
+                            query -> cache.getCounts(searcher, taxoReader, schema, query, FacetRequest.allDims(100), exact));
+                    for (FacetResultCache drillDownCache : new FacetResultCache[]{null, cache}) {
+                        measureLatency((drillDownCache == null ? "uncached" : "cached") + " drill down", iterations, query -> {
+                            FacetDrillDown navigation = new FacetDrillDown(searcher, taxoReader, Indexer.getFconfig(), query)
+                                    .setCache(drillDownCache).select("date", DRILL_DOWN_YEAR);
+                            FacetDrillDown.Result result = navigation.search(10);
+                            for (String dim : FacetDrillDown.DIMS) {
+                                navigation.childCounts(result, dim, 10);
+                            }
+                        });
+                    }
+                    System.out.println(cache);
+                } finally {
+                    service.release(current);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compares counting the facets of a product's reviews, as the numeric query used to, with
+     * looking up its {@link ProductSummary}, after checking that both give the same counts
+     * for every product of the index.
+     */
+    private static void benchmarkSummaries(List<ReviewRecord> reviews, int iterations) throws IOException {
+        IndexingOptions manySegments = new IndexingOptions().setStreamingParser(true)
+                .setBulkLoadProfile(new BulkLoadProfile().setRamBufferMB(1));
+        IndexingBenchmark.withTempIndex(reviews, manySegments, (indexDir, taxoDir) -> {
+            try (SearchService service = new SearchService(indexDir.toString(), taxoDir.toString(), 0)) {
+                SearcherAndTaxonomy current = service.acquire();
+                try {
+                    IndexSearcher searcher = current.searcher;
+                    TaxonomyReader taxoReader = current.taxonomyReader;
+                    ProductSummaries summaries = new ProductSummaries();
+                    long start = System.nanoTime();
+                    IndexSchema schema = service.getSchema(current);
+                    summaries.update(searcher.getIndexReader(), schema);
+                    System.out.printf("summarized %d products from %d segments in %.1f ms%n", summaries.size(),
+                            summaries.getSegmentsRead(), (System.nanoTime() - start) / 1e6);
+
+                    List<String> asins = asins(reviews);
+                    int mismatches = 0;
+                    for (String asin : asins) {
+                        if (!liveCounts(searcher, taxoReader, schema, asin).equals(summaryCounts(summaries.get(searcher.getIndexReader(), schema, asin)))) {
+                            mismatches++;
+                        }
+                    }
+                    System.out.println(asins.size() + " products checked against live counts, " + mismatches + " mismatches");
+
+                    measureProductLatency("live counts", asins, iterations, asin -> liveCounts(searcher, taxoReader, schema, asin));
+                    measureProductLatency("summary lookup", asins, iterations,
+                            asin -> summaryCounts(summaries.get(searcher.getIndexReader(), schema, asin)));
+                } finally {
+                    service.release(current);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compares rendering the short fields of a large page of hits from whole stored documents,
+     * as Facetery used to, with a {@link ResultProjection} reading them from doc values, after
+     * checking that both give the same values.
+     */
+    private static void benchmarkProjection(List<ReviewRecord> reviews, int iterations) throws IOException {
+        String[] fields = {"asin", "overall", "year", "month", "reviewerID"};
+        IndexingBenchmark.withTempIndex(reviews, new IndexingOptions().setStreamingParser(true), (indexDir, taxoDir) -> {
+            try (SearchService service = new SearchService(indexDir.toString(), taxoDir.toString(), 0)) {
+                SearcherAndTaxonomy current = service.acquire();
+                try {
+                    IndexSearcher searcher = current.searcher;
+                    ResultProjection projection = new ResultProjection(searcher, service.getSchema(current), fields);
+                    int mismatches = 0;
+                    for (Query query : parseQueries()) {
+                        ScoreDoc[] hits = searcher.search(query, PAGE_SIZE).scoreDocs;
+                        Document[] projected = projection.documents(hits);
+                        for (int i = 0; i < hits.length; i++) {
+                            Document stored = searcher.storedFields().document(hits[i].doc);
+                            for (String field : fields) {
+                                if (!Objects.equals(stored.get(field), projected[i].get(field))) {
+                                    mismatches++;
+                                }
+                            }
+                        }
+                    }
+                    System.out.println("pages of " + PAGE_SIZE + " hits checked against stored fields, " + mismatches + " mismatches");
+                    measureLatency("stored documents, page of " + PAGE_SIZE, iterations, query -> {
+                        for (ScoreDoc hit : searcher.search(query, PAGE_SIZE).scoreDocs) {
+                            Document doc = searcher.storedFields().document(hit.doc);
+                            for (String field : fields) {
+                                doc.get(field);
+                            }
+                        }
+                    });
+                    measureLatency("doc values projection, page of " + PAGE_SIZE, iterations, query -> {
+                        for (Document doc : projection.documents(searcher.search(query, PAGE_SIZE).scoreDocs)) {
+                            for (String field : fields) {
+                                doc.get(field);
+                            }
+                        }
+                    });
+                } finally {
+                    service.release(current);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compares getting page {@value #PAGE_DEPTH} of the hits sorted by date with searchAfter
+     * against collecting the top hits up to that page, on an unsorted index and on an index
+     * sorted by date, after checking that the pages add up to the same hits.
+     */
+    private static void benchmarkPaging(List<ReviewRecord> reviews, int iterations) throws IOException {
+        ResultPager.SortMode mode = ResultPager.SortMode.DATE;
+        IndexingOptions options = new IndexingOptions().setStreamingParser(true);
+        for (IndexSchema schema : new IndexSchema[]{new IndexSchema(), new IndexSchema().setIndexSort(mode)}) {
+            String index = schema.getIndexSort() == null ? "unsorted index" : "index sorted by date";
+            IndexingBenchmark.withTempIndex(reviews, options, schema, (indexDir, taxoDir) -> {
+                try (SearchService service = new SearchService(indexDir.toString(), taxoDir.toString(), 0)) {
+                    SearcherAndTaxonomy current = service.acquire();
+                    try {
+                        IndexSearcher searcher = current.searcher;
+                        int mismatches = 0;
+                        for (Query query : parseQueries()) {
+                            ResultPager pager = new ResultPager(searcher, schema, query, mode, PAGE_SIZE / PAGE_DEPTH);
+                            List<Integer> paged = new ArrayList<>();
+                            for (int page = 0; page < PAGE_DEPTH && pager.hasNext(); page++) {
+                                for (ScoreDoc hit : pager.next().scoreDocs) {
+                                    paged.add(hit.doc);
+                                }
+                            }
+                            List<Integer> top = new ArrayList<>();
+                            for (ScoreDoc hit : searcher.search(query, PAGE_SIZE, mode.sort(schema)).scoreDocs) {
+                                top.add(hit.doc);
+                            }
+                            mismatches += paged.equals(top) ? 0 : 1;
+                        }
+                        System.out.println(index + ": " + mismatches + " queries whose pages differ from the top hits");
+                        measureLatency("walk " + PAGE_DEPTH + " pages, " + index, iterations, query -> {
+                            ResultPager pager = new ResultPager(searcher, schema, query, mode, PAGE_SIZE / PAGE_DEPTH);
+                            for (int page = 0; page < PAGE_DEPTH && pager.hasNext(); page++) {
+                                pager.next();
+                            }
+                        });
+                        measureLatency("top hits up to each of " + PAGE_DEPTH + " pages, " + index, iterations, query -> {
+                            for (int page = 1; page <= PAGE_DEPTH; page++) {
+                                searcher.search(query, page * (PAGE_SIZE / PAGE_DEPTH), mode.sort(schema));
+                            }
+                        });
+                    } finally {
+                        service.release(current);
+                    }
+                }
+            });
+        }
+    }
+
+    // good, bad, then "dim/label=count" of every date and overall value, sorted
+    private static List<String> liveCounts(IndexSearcher searcher, TaxonomyReader taxoReader, IndexSchema schema, String asin) throws IOException {
+        FacetsCollector facetsCollector = FacetedSearch.search(searcher, new TermQuery(new Term("asin", asin)), 10).getFacetsCollector();
+        FacetResult ranges = RatingFacets.goodAndBad().counts(facetsCollector, schema).getAllChildren("overall");
+        List<String> counts = new ArrayList<>();
+        for (FacetResult fr : RatingFacets.allDims(searcher, taxoReader, Indexer.getFconfig(), facetsCollector, schema, 100)) {
+            if (!fr.dim.equals("asin")) {
+                for (LabelAndValue lv : fr.labelValues) {
+                    counts.add(fr.dim + "/" + lv.label + "=" + lv.value);
+                }
+            }
+        }
+        Collections.sort(counts);
+        counts.add(0, ranges.labelValues[0].label + "=" + ranges.labelValues[0].value);
+        counts.add(1, ranges.labelValues[1].label + "=" + ranges.labelValues[1].value);
+        return counts;
+    }
+
+    private static List<String> summaryCounts(ProductSummary summary) {
+        List<String> counts = new ArrayList<>();
+        for (FacetResult fr : summary.toFacetResults()) {
+            for (LabelAndValue lv : fr.labelValues) {
+                counts.add(fr.dim + "/" + lv.label + "=" + lv.value);
+            }
+        }
+        Collections.sort(counts);
+        counts.add(0, "good=" + summary.getGood());
+        counts.add(1, "bad=" + summary.getBad());
+        return counts;
+    }
+
+    /**
+     * Compares the numeric query's per-product lookups, counting the facets of every review
+     * of a product, on an unsorted index and on one sorted by product, date and rating.
+     * Both are built with a small RAM buffer so they have several segments, and then once
+     * more force merged to a single segment.
+     */
+    private static void benchmarkIndexSort(List<ReviewRecord> reviews, int iterations) throws IOException {
+        List<String> asins = asins(reviews);
+        for (int forceMergeSegments : new int[]{0, 1}) {
+            IndexingOptions options = new IndexingOptions().setStreamingParser(true)
+                    .setBulkLoadProfile(new BulkLoadProfile().setRamBufferMB(1).setForceMergeSegments(forceMergeSegments));
+            for (IndexSchema schema : new IndexSchema[]{new IndexSchema(), new IndexSchema().setIndexSort(ResultPager.SortMode.PRODUCT)}) {
+                long start = System.nanoTime();
+                IndexingBenchmark.withTempIndex(reviews, options, schema, (indexDir, taxoDir) -> {
+                    long indexingNanos = System.nanoTime() - start;
+                    try (SearchService service = new SearchService(indexDir.toString(), taxoDir.toString(), 0)) {
+                        SearcherAndTaxonomy current = service.acquire();
+                        try {
+                            IndexSearcher searcher = current.searcher;
+                            TaxonomyReader taxoReader = current.taxonomyReader;
+                            IndexSchema searchedSchema = service.getSchema(current);
+                            String name = (schema.getIndexSort() == null ? "unsorted" : "sorted by product") + ", "
+                                    + searcher.getIndexReader().leaves().size() + " segments";
+                            System.out.printf("%-40s indexed in %.0f ms%n", name, indexingNanos / 1e6);
+                            measureProductLatency("product lookups, " + name, asins, iterations,
+                                    asin -> liveCounts(searcher, taxoReader, searchedSchema, asin));
+                            measureProductLatency("product and year counts, " + name, asins, iterations, asin -> {
+                                DrillDownQuery drillDownQuery = new DrillDownQuery(Indexer.getFconfig(), new TermQuery(new Term("asin", asin)));
+                                drillDownQuery.add("date", DRILL_DOWN_YEAR);
+                                searcher.count(drillDownQuery);
+                            });
+                        } finally {
+                            service.release(current);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Compares the old rating layout, long doc values plus a taxonomy facet, with double doc
+     * values counted in ranges: index size, counting every dimension of the word queries,
+     * and the good and bad split of each product.
+     */
+    private static void benchmarkRatings(List<ReviewRecord> reviews, int iterations) throws IOException {
+        List<String> asins = asins(reviews);
+        for (IndexSchema schema : new IndexSchema[]{new IndexSchema().setDoubleRatings(false), new IndexSchema()}) {
+            String name = schema.hasDoubleRatings() ? "double ratings" : "long ratings + taxonomy";
+            IndexingBenchmark.withTempIndex(reviews, new IndexingOptions().setStreamingParser(true), schema, (indexDir, taxoDir) -> {
+                System.out.printf("%-40s %10d bytes%n", "index size, " + name,
+                        IndexingBenchmark.directorySize(indexDir) + IndexingBenchmark.directorySize(taxoDir));
+                try (SearchService service = new SearchService(indexDir.toString(), taxoDir.toString(), 0)) {
+                    SearcherAndTaxonomy current = service.acquire();
+                    try {
+                        IndexSearcher searcher = current.searcher;
+                        TaxonomyReader taxoReader = current.taxonomyReader;
+                        measureLatency("all dims, " + name, iterations, query -> {
+                            FacetsCollector facetsCollector = FacetedSearch.search(searcher, query, 10).getFacetsCollector();
+                            RatingFacets.allDims(searcher, taxoReader, Indexer.getFconfig(), facetsCollector, schema, 100);
+                        });
+                        measureProductLatency("good and bad, " + name, asins, iterations, asin -> {
+                            FacetsCollector facetsCollector = FacetedSearch.search(searcher, new TermQuery(new Term("asin", asin)), 10).getFacetsCollector();
+                            RatingFacets.goodAndBad().counts(facetsCollector, schema).getAllChildren(RatingFacets.FIELD);
+                        });
+                    } finally {
+                        service.release(current);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Compares keeping the categorical facets in the taxonomy with keeping them in sorted set
+     * doc values: indexing throughput, the time to open the readers a search needs (index and
+     * taxonomy reader, or index reader and sorted set state), and the latency of counting every
+     * dimension of the word queries, on the calling thread and on two threads. Checks first
+     * that both count the same.
+     */
+    private static void benchmarkFacetBackends(List<ReviewRecord> reviews, int iterations) throws IOException {
+        IndexingOptions options = new IndexingOptions().setStreamingParser(true);
+        for (FacetBackend backend : FacetBackend.values()) {
+            IndexSchema schema = new IndexSchema().setFacetBackend(backend);
+            IndexingBenchmark.measure("indexing, " + backend.name().toLowerCase(), INDEXING_ROUNDS,
+                    () -> IndexingBenchmark.indexIntoTempIndex(reviews, options, schema));
+        }
+
+        List<List<String>> parity = new ArrayList<>();
+        for (FacetBackend backend : FacetBackend.values()) {
+            IndexSchema schema = new IndexSchema().setFacetBackend(backend);
+            String name = backend.name().toLowerCase();
+            IndexingBenchmark.withTempIndex(reviews, options, schema, (indexDir, taxoDir) -> {
+                System.out.printf("%-40s %10d bytes%n", "index size, " + name,
+                        IndexingBenchmark.directorySize(indexDir) + IndexingBenchmark.directorySize(taxoDir));
+                measureReaderOpen("open readers, " + name, indexDir, taxoDir, backend, iterations);
+                try (SearchService service = new SearchService(indexDir.toString(), taxoDir.toString(), 0)) {
+                    SearcherAndTaxonomy current = service.acquire();
+                    try {
+                        IndexSearcher searcher = current.searcher;
+                        TaxonomyReader taxoReader = current.taxonomyReader;
+                        List<String> counts = new ArrayList<>();
+                        for (Query query : parseQueries()) {
+                            FacetsCollector facetsCollector = FacetedSearch.search(searcher, query, 10).getFacetsCollector();
+                            for (FacetResult fr : backend.counts(searcher, taxoReader, Indexer.getFconfig(), facetsCollector).getAllDims(PARITY_TOP_N)) {
+                                for (LabelAndValue lv : fr.labelValues) {
+                                    counts.add(query + " " + fr.dim + "/" + lv.label + "=" + lv.value);
+                                }
+                            }
+                        }
+                        Collections.sort(counts);
+                        parity.add(counts);
+                        measureLatency("facet counts, " + name, iterations, query -> {
+                            FacetsCollector facetsCollector = FacetedSearch.search(searcher, query, 10).getFacetsCollector();
+                            backend.counts(searcher, taxoReader, Indexer.getFconfig(), facetsCollector).getAllDims(100);
+                        });
+                    } finally {
+                        service.release(current);
+                    }
+                }
+                try (SearchService service = new SearchService(indexDir.toString(), taxoDir.toString(), 0,
+                        new SearchConcurrency().setThreads(2))) {
+                    SearcherAndTaxonomy current = service.acquire();
+                    try {
+                        IndexSearcher searcher = current.searcher;
+                        TaxonomyReader taxoReader = current.taxonomyReader;
+                        measureLatency("facet counts, 2 threads, " + name, iterations, query -> {
+                            FacetsCollector facetsCollector = FacetedSearch.search(searcher, query, 10).getFacetsCollector();
+                            backend.counts(searcher, taxoReader, Indexer.getFconfig(), facetsCollector).getAllDims(100);
+                        });
+                    } finally {
+                        service.release(current);
+                    }
+                }
+            });
+        }
+        System.out.println("facet counts equal across backends: " + parity.get(0).equals(parity.get(1))
+                + " (" + parity.get(0).size() + " values)");
+    }
+
+    /**
+     * Compares exact facet counts of the word queries, and of all reviews, with counts
+     * estimated from samples of a few sizes: latency, and how many estimates of the date and
+     * overall values fall within their margin of error of the exact count.
+     */
+    private static void benchmarkSampling(List<ReviewRecord> reviews, int iterations) throws IOException {
+        IndexingBenchmark.withTempIndex(reviews, new IndexingOptions().setStreamingParser(true), (indexDir, taxoDir) -> {
+            try (SearchService service = new SearchService(indexDir.toString(), taxoDir.toString(), 0)) {
+                SearcherAndTaxonomy current = service.acquire();
+                try {
+                    IndexSearcher searcher = current.searcher;
+                    TaxonomyReader taxoReader = current.taxonomyReader;
+                    IndexSchema schema = service.getSchema(current);
+                    List<Query> queries = new ArrayList<>(parseQueries());
+                    queries.add(new MatchAllDocsQuery());
+                    FacetSampler exact = new FacetSampler().setHitThreshold(Integer.MAX_VALUE);
+                    measureLatency("exact facet counts", iterations,
+                            query -> exact.count(searcher, taxoReader, Indexer.getFconfig(), schema, query, FacetRequest.allDims(100)));
+                    for (int sampleSize : new int[]{reviews.size() / 10, reviews.size() / 4}) {
+                        FacetSampler sampler = new FacetSampler().setHitThreshold(0).setSampleSize(sampleSize);
+                        int estimates = 0;
+                        int covered = 0;
+                        double relativeError = 0;
+                        for (Query query : queries) {
+                            Map<String, Number> exactCounts = new HashMap<>();
+                            for (FacetResult fr : exact.count(searcher, taxoReader, Indexer.getFconfig(), schema, query, FacetRequest.allDims(100)).getDims()) {
+                                for (LabelAndValue lv : fr.labelValues) {
+                                    exactCounts.put(fr.dim + "/" + lv.label, lv.value);
+                                }
+                            }
+                            FacetSampler.Counts sampled = sampler.count(searcher, taxoReader, Indexer.getFconfig(), schema, query, FacetRequest.allDims(100));
+                            for (FacetResult fr : sampled.getDims()) {
+                                if (fr.dim.equals("asin") || !sampled.isSampled()) {
+                                    continue;
+                                }
+                                for (LabelAndValue lv : fr.labelValues) {
+                                    int actual = exactCounts.get(fr.dim + "/" + lv.label).intValue();
+                                    int error = Math.abs(lv.value.intValue() - actual);
+                                    estimates++;
+                                    covered += error <= sampled.margin(lv.value) ? 1 : 0;
+                                    relativeError += (double) error / actual;
+                                }
+                            }
+                        }
+                        System.out.printf("sample of %5d: %d estimates, %.1f%% within margin, mean relative error %.1f%%%n",
+                                sampleSize, estimates, 100.0 * covered / Math.max(1, estimates), 100 * relativeError / Math.max(1, estimates));
+                        measureLatency("sampled facet counts, " + sampleSize, iterations,
+                                query -> sampler.count(searcher, taxoReader, Indexer.getFconfig(), schema, query, FacetRequest.allDims(100)));
+                    }
+                } finally {
+                    service.release(current);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compares counting every dimension with getAllDims(100), as Facetery did, with facet requests
+     * for the same dimensions and for the ones Facetery now asks for: the word queries with the
+     * top 10 products, and the numeric query's products without the asin dimension.
+     * Checks first that a request for every dimension counts the same as getAllDims.
+     */
+    private static void benchmarkFacetRequests(List<ReviewRecord> reviews, int iterations) throws IOException {
+        List<String> asins = asins(reviews);
+        List<String> products = asins.subList(0, Math.min(100, asins.size()));
+        FacetRequest all = FacetRequest.allDims(100);
+        FacetRequest query = new FacetRequest().add("asin", 10).add("date", 100).add("overall", 100);
+        FacetRequest product = new FacetRequest().add("date", 100).add("overall", 100);
+        for (FacetBackend backend : FacetBackend.values()) {
+            IndexSchema schema = new IndexSchema().setFacetBackend(backend);
+            String name = backend.name().toLowerCase();
+            IndexingBenchmark.withTempIndex(reviews, new IndexingOptions().setStreamingParser(true), schema, (indexDir, taxoDir) -> {
+                try (SearchService service = new SearchService(indexDir.toString(), taxoDir.toString(), 0)) {
+                    SearcherAndTaxonomy current = service.acquire();
+                    try {
+                        IndexSearcher searcher = current.searcher;
+                        TaxonomyReader taxoReader = current.taxonomyReader;
+                        int mismatches = 0;
+                        for (Query q : parseQueries()) {
+                            FacetsCollector facetsCollector = FacetedSearch.search(searcher, q, 10).getFacetsCollector();
+                            Map<String, String> expected = new HashMap<>();
+                            for (FacetResult fr : RatingFacets.allDims(searcher, taxoReader, Indexer.getFconfig(), facetsCollector, schema, 100)) {
+                                expected.put(fr.dim, fr.value + " " + Arrays.toString(fr.labelValues));
+                            }
+                            Map<String, String> actual = new HashMap<>();
+                            for (FacetResult fr : all.count(searcher, taxoReader, Indexer.getFconfig(), facetsCollector, schema)) {
+                                actual.put(fr.dim, fr.value + " " + Arrays.toString(fr.labelValues));
+                            }
+                            mismatches += expected.equals(actual) ? 0 : 1;
+                        }
+                        System.out.println(name + ": " + mismatches + " queries counted differently by getAllDims and the request");
+                        measureLatency("getAllDims(100), " + name, iterations, q -> {
+                            FacetsCollector facetsCollector = FacetedSearch.search(searcher, q, 10).getFacetsCollector();
+                            RatingFacets.allDims(searcher, taxoReader, Indexer.getFconfig(), facetsCollector, schema, 100);
+                        });
+                        measureLatency("request " + all + ", " + name, iterations, q -> {
+                            FacetsCollector facetsCollector = FacetedSearch.search(searcher, q, 10).getFacetsCollector();
+                            all.count(searcher, taxoReader, Indexer.getFconfig(), facetsCollector, schema);
+                        });
+                        measureLatency("request " + query + ", " + name, iterations, q -> {
+                            FacetsCollector facetsCollector = FacetedSearch.search(searcher, q, 10).getFacetsCollector();
+                            query.count(searcher, taxoReader, Indexer.getFconfig(), facetsCollector, schema);
+                        });
+                        measureProductLatency("product getAllDims(100), " + name, products, iterations, asin -> {
+                            FacetsCollector facetsCollector = FacetedSearch.search(searcher, new TermQuery(new Term("asin", asin)), 10).getFacetsCollector();
+                            RatingFacets.allDims(searcher, taxoReader, Indexer.getFconfig(), facetsCollector, schema, 100);
+                        });
+                        measureProductLatency("product request " + product + ", " + name, products, iterations, asin -> {
+                            FacetsCollector facetsCollector = FacetedSearch.search(searcher, new TermQuery(new Term("asin", asin)), 10).getFacetsCollector();
+                            product.count(searcher, taxoReader, Indexer.getFconfig(), facetsCollector, schema);
+                        });
+                    } finally {
+                        service.release(current);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Indexes the reviews without vectors, and with review vectors under a few HNSW settings,
+     * then compares the nearest reviews to the texts of the first reviews found through the graph
+     * with the exact ones found by comparing every vector: recall of the top 10, and latency.
+     * A hit counts as found if it scores at least as well as the exact 10th, as many reviews tie.
+     */
+    private static void benchmarkVectors(List<ReviewRecord> reviews, int iterations) throws IOException {
+        IndexingOptions plain = new IndexingOptions().setStreamingParser(true);
+        IndexingBenchmark.measure("indexing, no vectors", INDEXING_ROUNDS, () -> IndexingBenchmark.indexIntoTempIndex(reviews, plain));
+        IndexSchema schema = new IndexSchema().setReviewVectors(ReviewVectors.DEFAULT_DIMENSION);
+        ReviewVectors vectors = new ReviewVectors(schema.getReviewVectorDimension());
+        List<String> texts = new ArrayList<>();
+        for (ReviewRecord review : reviews) {
+            if (texts.size() < VECTOR_QUERIES && vectors.vector(review.getReviewText()) != null) {
+                texts.add(review.getReviewText());
+            }
+        }
+        boolean first = true;
+        for (int[] hnsw : HNSW_SETTINGS) {
+            IndexingOptions options = new IndexingOptions().setStreamingParser(true).setHnsw(hnsw[0], hnsw[1]);
+            String name = "maxConn " + hnsw[0] + ", beamWidth " + hnsw[1];
+            IndexingBenchmark.measure("indexing, " + name, INDEXING_ROUNDS, () -> IndexingBenchmark.indexIntoTempIndex(reviews, options, schema));
+            boolean exact = first;
+            IndexingBenchmark.withTempIndex(reviews, options, schema, (indexDir, taxoDir) -> {
+                try (Directory directory = FSDirectory.open(indexDir); DirectoryReader reader = DirectoryReader.open(directory)) {
+                    IndexSearcher searcher = new IndexSearcher(reader);
+                    int found = 0;
+                    int expected = 0;
+                    for (String text : texts) {
+                        float[] vector = vectors.vector(text);
+                        ScoreDoc[] nearest = ReviewVectors.exactNeighbours(reader, vector, NEIGHBOURS, null).scoreDocs;
+                        float tenth = nearest[nearest.length - 1].score;
+                        for (ScoreDoc hit : searcher.search(new KnnFloatVectorQuery(ReviewVectors.FIELD, vector, NEIGHBOURS), NEIGHBOURS).scoreDocs) {
+                            found += hit.score >= tenth ? 1 : 0;
+                        }
+                        expected += nearest.length;
+                    }
+                    System.out.printf("%-40s recall@%d %.3f%n", name, NEIGHBOURS, (double) found / expected);
+                    measureProductLatency("hnsw top " + NEIGHBOURS + ", " + name, texts, iterations,
+                            text -> searcher.search(vectors.query(text, NEIGHBOURS, null), NEIGHBOURS));
+                    if (exact) {
+                        measureProductLatency("exact top " + NEIGHBOURS, texts, iterations,
+                                text -> ReviewVectors.exactNeighbours(reader, vectors.vector(text), NEIGHBOURS, null));
+                    }
+                }
+            });
+            first = false;
+        }
+    }
+
+    // opening the index reader, plus the taxonomy reader or the sorted set ordinal map
+    private static void measureReaderOpen(String name, Path indexDir, Path taxoDir, FacetBackend backend,
+                                          int iterations) throws IOException {
+        long[] latencies = new long[iterations];
+        try (Directory index = FSDirectory.open(indexDir); Directory taxo = FSDirectory.open(taxoDir)) {
+            for (int i = -WARMUP_ITERATIONS; i < iterations; i++) {
+                long start = System.nanoTime();
+                try (DirectoryReader reader = DirectoryReader.open(index)) {
+                    if (backend == FacetBackend.TAXONOMY) {
+                        new DirectoryTaxonomyReader(taxo).close();
+                    } else {
+                        new DefaultSortedSetDocValuesReaderState(reader, Indexer.getFconfig());
+                    }
+                    if (i >= 0) {
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                }
+            }
+        }
+        IndexingBenchmark.printLatencies(name, latencies);
+    }
+
+    private static void measureProductLatency(String name, List<String> asins, int iterations, ProductTask task) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            for (String asin : asins) {
+                task.run(asin);
+            }
+        }
+        long[] latencies = new long[iterations * asins.size()];
+        int n = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (String asin : asins) {
+                long start = System.nanoTime();
+                task.run(asin);
+                latencies[n++] = System.nanoTime() - start;
+            }
+        }
+        IndexingBenchmark.printLatencies(name, latencies);
+    }
+
+    // every product of the reviews, in the order they first appear
+    private static List<String> asins(List<ReviewRecord> reviews) {
+        Set<String> asins = new LinkedHashSet<>();
+        for (ReviewRecord review : reviews) {
+            if (!review.getAsin().isEmpty()) {
+                asins.add(review.getAsin());
+            }
+        }
+        return new ArrayList<>(asins);
+    }
+
+    private static void measureLatency(String name, int iterations, QueryTask task) throws IOException {
+        List<Query> queries = parseQueries();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            for (Query query : queries) {
+                task.run(query);
+            }
+        }
+        long[] latencies = new long[iterations * queries.size()];
+        int n = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (Query query : queries) {
+                long start = System.nanoTime();
+                task.run(query);
+                latencies[n++] = System.nanoTime() - start;
+            }
+        }
+        IndexingBenchmark.printLatencies(name, latencies);
+    }
+
+    private static void facetedSearch(IndexSearcher searcher, TaxonomyReader taxoReader, Query query) throws IOException {
+        FacetsCollector facetsCollector = FacetedSearch.search(searcher, query, 10).getFacetsCollector();
+        new FastTaxonomyFacetCounts(taxoReader, Indexer.getFconfig(), facetsCollector).getAllDims(100);
+    }
+
+    @FunctionalInterface
+    interface QueryTask {
+        void run(Query query) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface ProductTask {
+        void run(String asin) throws IOException;
+    }
+
+    private static List<Query> parseQueries() {
+        List<Query> queries = new ArrayList<>();
+        QueryParser parser = new QueryParser("reviewText", Indexer.createAnalyzer());
+        for (String word : QUERY_WORDS) {
+            try {
+                queries.add(parser.parse(word));
+            } catch (ParseException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,174 @@
+package org.example;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Settings for searching the segments of an index in parallel. The searchers it creates
+ * split the segments into slices and hand each slice to a thread pool, so a query that
+ * matches across many segments uses several cores instead of one.
+ * The pool is created with the first searcher and shut down by {@link #close()}.
+ */
+public class SearchConcurrency implements Closeable {
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean virtualThreads = false;
+    private int maxDocsPerSlice = 250_000;
+    private int maxSegmentsPerSlice = 5;
+    private ExecutorService executor;
+
+    /**
+     * Creates the default settings: one platform thread per core, and Lucene's default
+     * slice limits of 250,000 documents or 5 segments per slice.
+     */
+    public SearchConcurrency() {
+    }
+
+    /**
+     * @param threads the size of the platform thread pool; ignored with virtual threads.
+     * @return this instance.
+     */
+    public SearchConcurrency setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one search thread");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param virtualThreads true to run every slice on its own virtual thread. Needs Java 21;
+     *                       older runtimes fall back to the platform thread pool.
+     * @return this instance.
+     */
+    public SearchConcurrency setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Sets how segments are grouped into slices. A slice is searched by one thread, so
+     * smaller slices mean more parallelism but more per-task overhead.
+     *
+     * @param maxDocsPerSlice documents after which a slice is closed.
+     * @param maxSegmentsPerSlice segments after which a slice is closed.
+     * @return this instance.
+     */
+    public SearchConcurrency setSliceLimits(int maxDocsPerSlice, int maxSegmentsPerSlice) {
+        if (maxDocsPerSlice < 1 || maxSegmentsPerSlice < 1) {
+            throw new IllegalArgumentException("Slice limits must be positive");
+        }
+        this.maxDocsPerSlice = maxDocsPerSlice;
+        this.maxSegmentsPerSlice = maxSegmentsPerSlice;
+        return this;
+    }
+
+    /**
+     * Returns a factory for searchers that search their slices on this instance's thread pool.
+     *
+     * @return the searcher factory, for a {@link SearchService} or a SearcherManager.
+     */
+    public SearcherFactory searcherFactory() {
+        ExecutorService pool = executor();
+        return new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                return new SlicedSearcher(reader, pool, maxDocsPerSlice, maxSegmentsPerSlice);
+            }
+        };
+    }
+
+    /**
+     * Returns the thread pool a searcher searches its slices on, so work done next to the
+     * search, such as counting facets per segment, can run on the same pool.
+     *
+     * @param searcher a searcher.
+     * @return the pool, or null if the searcher was not created by a {@link #searcherFactory()}.
+     */
+    public static ExecutorService executor(IndexSearcher searcher) {
+        return searcher instanceof SlicedSearcher ? ((SlicedSearcher) searcher).pool : null;
+    }
+
+    private static class SlicedSearcher extends IndexSearcher {
+
+        private final ExecutorService pool;
+        private final int maxDocsPerSlice;
+        private final int maxSegmentsPerSlice;
+
+        SlicedSearcher(IndexReader reader, ExecutorService pool, int maxDocsPerSlice, int maxSegmentsPerSlice) {
+            super(reader, pool);
+            this.pool = pool;
+            this.maxDocsPerSlice = maxDocsPerSlice;
+            this.maxSegmentsPerSlice = maxSegmentsPerSlice;
+        }
+
+        @Override
+        protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+            return slices(leaves, maxDocsPerSlice, maxSegmentsPerSlice);
+        }
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = virtualThreads ? newVirtualThreadExecutor() : null;
+            if (executor == null) {
+                AtomicInteger count = new AtomicInteger();
+                executor = Executors.newFixedThreadPool(threads, runnable -> {
+                    Thread thread = new Thread(runnable, "search-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        return executor;
+    }
+
+    // looked up by reflection so the project still builds and runs on Java 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads need Java 21, using platform threads.");
+            return null;
+        }
+    }
+
+    public int getThreads() {return threads;}
+
+    public boolean isVirtualThreads() {return virtualThreads;}
+
+    public int getMaxDocsPerSlice() {return maxDocsPerSlice;}
+
+    public int getMaxSegmentsPerSlice() {return maxSegmentsPerSlice;}
+
+    /**
+     * Shuts down the thread pool, letting running searches finish.
+     */
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (virtualThreads ? "virtual threads" : threads + " search threads")
+                + ", slices of up to " + maxDocsPerSlice + " docs / " + maxSegmentsPerSlice + " segments";
+    }
+}
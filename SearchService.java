@@ -0,0 +1,265 @@
+package org.example;
+
+import org.apache.lucene.facet.taxonomy.SearcherTaxonomyManager;
+import org.apache.lucene.facet.taxonomy.SearcherTaxonomyManager.SearcherAndTaxonomy;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps an index reader and its taxonomy reader open across searches, so repeated queries
+ * run against warm readers instead of reopening both from disk every time.
+ * The pair is refreshed on a fixed schedule and on {@link #maybeRefresh()}; a refresh only
+ * opens the segments that changed. Searchers are reference counted: every {@link #acquire()}
+ * must be matched by a {@link #release} so an old pair is closed once nobody uses it.
+ * <p>
+ * Opened on directories, the service sees what an Indexer committed, including its checkpoints.
+ * Opened on a running {@link Indexer} it searches the writers directly (near-real-time), so
+ * reviews show up before they are committed.
+ */
+public class SearchService implements Closeable {
+
+    /** Seconds between two scheduled refreshes. */
+    static final long DEFAULT_REFRESH_SECONDS = 5;
+
+    private final Directory indexDir;
+    private final Directory taxoDir;
+    private final Indexer indexer;
+    private final SearcherFactory searcherFactory;
+    private final SearchConcurrency concurrency;
+    private final ScheduledExecutorService refresher;
+    private final List<ReferenceManager.RefreshListener> listeners = new CopyOnWriteArrayList<>();
+    private SearcherTaxonomyManager manager; // guarded by this; null until an index exists
+
+    /**
+     * Opens a search service on index and taxonomy directories, refreshing every
+     * {@link #DEFAULT_REFRESH_SECONDS} seconds. The directories may still be empty;
+     * the readers are opened once an index has been committed.
+     *
+     * @param indexPath the directory of the index.
+     * @param taxoPath the directory of the taxonomy.
+     * @throws IOException if the directories cannot be opened.
+     */
+    public SearchService(String indexPath, String taxoPath) throws IOException {
+        this(indexPath, taxoPath, DEFAULT_REFRESH_SECONDS);
+    }
+
+    /**
+     * Opens a search service on index and taxonomy directories.
+     *
+     * @param indexPath the directory of the index.
+     * @param taxoPath the directory of the taxonomy.
+     * @param refreshSeconds seconds between scheduled refreshes, 0 to refresh only on request.
+     * @throws IOException if the directories cannot be opened.
+     */
+    public SearchService(String indexPath, String taxoPath, long refreshSeconds) throws IOException {
+        this(indexPath, taxoPath, refreshSeconds, null);
+    }
+
+    /**
+     * Opens a search service on index and taxonomy directories whose searchers search
+     * their segments in parallel.
+     *
+     * @param indexPath the directory of the index.
+     * @param taxoPath the directory of the taxonomy.
+     * @param refreshSeconds seconds between scheduled refreshes, 0 to refresh only on request.
+     * @param concurrency the thread pool and slicing of the searchers, null to search on the calling thread;
+     *                    it is closed together with this service.
+     * @throws IOException if the directories cannot be opened.
+     */
+    public SearchService(String indexPath, String taxoPath, long refreshSeconds, SearchConcurrency concurrency) throws IOException {
+        this(FSDirectory.open(Paths.get(indexPath)), FSDirectory.open(Paths.get(taxoPath)), null, refreshSeconds, concurrency);
+    }
+
+    /**
+     * Opens a near-real-time search service on the writers of a configured Indexer.
+     *
+     * @param indexer the indexer, after {@link Indexer#configurarIndice} and before {@link Indexer#close()}.
+     * @param refreshSeconds seconds between scheduled refreshes, 0 to refresh only on request.
+     * @throws IOException if the readers cannot be opened.
+     */
+    public SearchService(Indexer indexer, long refreshSeconds) throws IOException {
+        this(indexer, refreshSeconds, null);
+    }
+
+    /**
+     * Opens a near-real-time search service on the writers of a configured Indexer whose
+     * searchers search their segments in parallel.
+     *
+     * @param indexer the indexer, after {@link Indexer#configurarIndice} and before {@link Indexer#close()}.
+     * @param refreshSeconds seconds between scheduled refreshes, 0 to refresh only on request.
+     * @param concurrency the thread pool and slicing of the searchers, null to search on the calling thread;
+     *                    it is closed together with this service.
+     * @throws IOException if the readers cannot be opened.
+     */
+    public SearchService(Indexer indexer, long refreshSeconds, SearchConcurrency concurrency) throws IOException {
+        this(null, null, indexer, refreshSeconds, concurrency);
+    }
+
+    private SearchService(Directory indexDir, Directory taxoDir, Indexer indexer, long refreshSeconds,
+                          SearchConcurrency concurrency) throws IOException {
+        this.indexDir = indexDir;
+        this.taxoDir = taxoDir;
+        this.indexer = indexer;
+        this.concurrency = concurrency;
+        this.searcherFactory = concurrency == null ? new SearcherFactory() : concurrency.searcherFactory();
+        open();
+
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (refreshSeconds > 0) {
+            refresher.scheduleWithFixedDelay(() -> {
+                try {
+                    maybeRefresh();
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error refreshing the searcher: " + e.getMessage());
+                }
+            }, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Returns the current searcher and taxonomy reader. The caller must hand them back
+     * with {@link #release} when done, typically in a finally block.
+     *
+     * @return the searcher and the matching taxonomy reader.
+     * @throws IOException if the readers cannot be opened.
+     * @throws IllegalStateException if there is no index yet.
+     */
+    public SearcherAndTaxonomy acquire() throws IOException {
+        SearcherTaxonomyManager current;
+        synchronized (this) {
+            if (manager == null) {
+                open();
+            }
+            if (manager == null) {
+                throw new IllegalStateException("No index found, index some reviews first");
+            }
+            current = manager;
+        }
+        return current.acquire();
+    }
+
+    /**
+     * Hands back a searcher obtained from {@link #acquire()}.
+     *
+     * @param searcherAndTaxonomy the searcher to release; ignored if null.
+     * @throws IOException if closing a reader that is no longer current fails.
+     */
+    public void release(SearcherAndTaxonomy searcherAndTaxonomy) throws IOException {
+        if (searcherAndTaxonomy == null) {
+            return;
+        }
+        // the same as SearcherTaxonomyManager.release, which keeps working after the manager was replaced
+        searcherAndTaxonomy.searcher.getIndexReader().decRef();
+        searcherAndTaxonomy.taxonomyReader.decRef();
+    }
+
+    /**
+     * Opens the readers on changes made since the last refresh, e.g. right after an indexing
+     * run committed. Searches already running keep the searcher they acquired.
+     *
+     * @throws IOException if the new readers cannot be opened.
+     */
+    public void maybeRefresh() throws IOException {
+        SearcherTaxonomyManager current;
+        synchronized (this) {
+            if (manager == null) {
+                open();
+                return;
+            }
+            current = manager;
+        }
+        try {
+            current.maybeRefreshBlocking();
+        } catch (IllegalStateException e) {
+            // the taxonomy was recreated by a non-incremental indexing run; start over from the new commit
+            reopen(current);
+        }
+    }
+
+    /**
+     * Adds a listener called around every refresh, e.g. to drop caches tied to the old readers.
+     *
+     * @param listener the listener.
+     */
+    public synchronized void addRefreshListener(ReferenceManager.RefreshListener listener) {
+        listeners.add(listener);
+        if (manager != null) {
+            manager.addListener(listener);
+        }
+    }
+
+    /**
+     * Returns the schema of the commit an acquired searcher reads, so a query is built for the
+     * same index it runs on even if a refresh opened a commit with another schema meanwhile.
+     *
+     * @param searcherAndTaxonomy a searcher obtained from {@link #acquire()} and not released yet.
+     * @return the schema the searcher's index was written with.
+     * @throws IOException if the commit cannot be read.
+     */
+    public IndexSchema getSchema(SearcherAndTaxonomy searcherAndTaxonomy) throws IOException {
+        // near-real-time readers see the writer's documents, whose schema is the indexer's
+        return indexer != null ? indexer.getSchema() : IndexSchema.read((DirectoryReader) searcherAndTaxonomy.searcher.getIndexReader());
+    }
+
+    private synchronized void open() throws IOException {
+        if (manager != null) {
+            return;
+        }
+        if (indexer != null) {
+            manager = new SearcherTaxonomyManager(indexer.getIndexWriter(), searcherFactory, indexer.getTaxoWriter());
+        } else if (DirectoryReader.indexExists(indexDir) && DirectoryReader.indexExists(taxoDir)) {
+            manager = new SearcherTaxonomyManager(indexDir, taxoDir, searcherFactory);
+        } else {
+            return;
+        }
+        for (ReferenceManager.RefreshListener listener : listeners) {
+            manager.addListener(listener);
+        }
+    }
+
+    private void reopen(SearcherTaxonomyManager stale) throws IOException {
+        synchronized (this) {
+            if (manager != stale) {
+                return; // another thread already reopened
+            }
+            manager = null;
+            open();
+        }
+        stale.close();
+    }
+
+    /**
+     * Stops the scheduled refreshes and closes the readers once the last acquired searcher is released.
+     *
+     * @throws IOException if closing the readers fails.
+     */
+    @Override
+    public void close() throws IOException {
+        refresher.shutdownNow();
+        synchronized (this) {
+            if (manager != null) {
+                manager.close();
+                manager = null;
+            }
+        }
+        if (concurrency != null) {
+            concurrency.close();
+        }
+    }
+}
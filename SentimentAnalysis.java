@@ -2,8 +2,15 @@ import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.FixedBitSet;
+import org.example.IndexSchema;
+import org.example.Indexer;
+import org.example.KnnSentimentClassifier;
+import org.example.NaiveBayesModel;
+import org.example.ReviewVectors;
 
 import java.io.IOException;
 import java.nio.file.Paths;
@@ -30,27 +37,46 @@ public class SentimentAnalysis {
         List<Integer> testingDocIds = new ArrayList<>();
         prepareDatasets(reader, trainingDocIds, testingDocIds);
 
-        List<Document> trainingDocs = extractDocuments(reader, trainingDocIds);
-        List<Document> testingDocs = extractDocuments(reader, testingDocIds);
-
-        if (trainingDocs.isEmpty() || testingDocs.isEmpty()) {
+        if (trainingDocIds.isEmpty() || testingDocIds.isEmpty()) {
             System.out.println("Error: Insufficient training or testing data.");
             return;
         }
 
+        FixedBitSet training = new FixedBitSet(reader.maxDoc());
+        for (Integer docId : trainingDocIds) {
+            training.set(docId);
+        }
+        IndexSchema schema = IndexSchema.read((DirectoryReader) reader);
+
+        Scanner scanner = new Scanner(System.in);
         int k = 4;
-        ConfusionMatrix knnConfusionMatrix = evaluateKNNClassifier(trainingDocs, testingDocs, k);
+        KnnSentimentClassifier knnClassifier = new KnnSentimentClassifier(new IndexSearcher(reader), schema, training,
+                Indexer.createAnalyzer(), k);
+        System.out.println("Compare each review with every training review to find its k-NN neighbours, instead of querying the index? (y/n)");
+        if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            knnClassifier.setExact(true);
+        } else if (schema.hasReviewVectors()) {
+            System.out.println("Find the k-NN neighbours by review vector instead of by shared words? (y/n)");
+            if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                knnClassifier.setVectors(new ReviewVectors(schema.getReviewVectorDimension()));
+            }
+        }
+        List<Document> testingDocs = extractDocuments(reader, testingDocIds);
+        ConfusionMatrix knnConfusionMatrix = evaluateKNNClassifier(knnClassifier, testingDocs);
         printEvaluationResults("k-NN", knnConfusionMatrix);
 
-        ConfusionMatrix naiveBayesConfusionMatrix = evaluateNaiveBayesClassifier(trainingDocs, testingDocs);
+        System.out.println("Train Naive Bayes from the postings of the index instead of the stored reviews? (y/n)");
+        NaiveBayesModel naiveBayesModel = scanner.nextLine().trim().equalsIgnoreCase("y")
+                ? NaiveBayesModel.train(reader, schema, training, Indexer.createAnalyzer())
+                : trainNaiveBayes(extractDocuments(reader, trainingDocIds)); // only this mode reads the stored training reviews
+        ConfusionMatrix naiveBayesConfusionMatrix = evaluateNaiveBayesClassifier(naiveBayesModel, testingDocs);
         printEvaluationResults("Naive Bayes", naiveBayesConfusionMatrix);
 
-        Scanner scanner = new Scanner(System.in);
         System.out.println("Please enter a review text for sentiment classification:");
         String userReview = scanner.nextLine();
 
-        String predictedSentimentKNN = predictSentimentUsingKNN(userReview, trainingDocs, k);
-        String predictedSentimentNB = predictSentimentUsingNaiveBayes(userReview, trainingDocs);
+        String predictedSentimentKNN = predictSentimentUsingKNN(userReview, knnClassifier);
+        String predictedSentimentNB = predictSentimentUsingNaiveBayes(userReview, naiveBayesModel);
 
         System.out.println("Predicted Sentiment using k-NN: " + predictedSentimentKNN);
         System.out.println("Predicted Sentiment using Naive Bayes: " + predictedSentimentNB);
@@ -88,15 +114,15 @@ public class SentimentAnalysis {
         return docs;
     }
 
-    private static ConfusionMatrix evaluateKNNClassifier(List<Document> trainingDocs, List<Document> testingDocs, int k) {
+    private static ConfusionMatrix evaluateKNNClassifier(KnnSentimentClassifier classifier, List<Document> testingDocs) throws IOException {
         int truePositive = 0, falsePositive = 0, trueNegative = 0, falseNegative = 0;
 
         for (Document doc : testingDocs) {
             String reviewText = doc.get("reviewText");
-            String originalSentiment = doc.get("sentiment");
+            String originalSentiment = sentimentOf(doc);
 
             if (reviewText != null) {
-                String predictedSentiment = predictSentimentUsingKNN(reviewText, trainingDocs, k);
+                String predictedSentiment = predictSentimentUsingKNN(reviewText, classifier);
 
                 if (originalSentiment.equals(predictedSentiment)) {
                     if (predictedSentiment.equals("positive")) {
@@ -120,15 +146,15 @@ public class SentimentAnalysis {
         return new ConfusionMatrix(truePositive, falsePositive, trueNegative, falseNegative);
     }
 
-    private static ConfusionMatrix evaluateNaiveBayesClassifier(List<Document> trainingDocs, List<Document> testingDocs) {
+    private static ConfusionMatrix evaluateNaiveBayesClassifier(NaiveBayesModel model, List<Document> testingDocs) {
         int truePositive = 0, falsePositive = 0, trueNegative = 0, falseNegative = 0;
 
         for (Document doc : testingDocs) {
             String reviewText = doc.get("reviewText");
-            String originalSentiment = doc.get("sentiment");
+            String originalSentiment = sentimentOf(doc);
 
             if (reviewText != null) {
-                String predictedSentiment = predictSentimentUsingNaiveBayes(reviewText, trainingDocs);
+                String predictedSentiment = predictSentimentUsingNaiveBayes(reviewText, model);
 
                 if (originalSentiment.equals(predictedSentiment)) {
                     if (predictedSentiment.equals("positive")) {
@@ -198,112 +224,34 @@ public class SentimentAnalysis {
         }
     }
 
-    private static String predictSentimentUsingKNN(String reviewText, List<Document> trainingDocs, int k) {
-        Map<String, Integer> sentimentVotes = new HashMap<>();
-
-        for (Document trainingDoc : trainingDocs) {
-            String trainingReviewText = trainingDoc.get("reviewText");
-            String trainingSentiment = trainingDoc.get("sentiment");
-
-            double distance = calculateTextDistance(reviewText, trainingReviewText);
-
-            sentimentVotes.put(trainingSentiment, sentimentVotes.getOrDefault(trainingSentiment, 0) + 1);
-        }
-
-
-        return sentimentVotes.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .get()
-                .getKey();
-    }
-    private static double calculateTextSimilarity(String text1, String text2) {
-        Map<String, Integer> tf1 = computeTermFrequencies(text1);
-        Map<String, Integer> tf2 = computeTermFrequencies(text2);
-
-        double dotProduct = 0.0, magnitude1 = 0.0, magnitude2 = 0.0;
-
-        for (String term : tf1.keySet()) {
-            dotProduct += tf1.get(term) * tf2.getOrDefault(term, 0);
-            magnitude1 += Math.pow(tf1.get(term), 2);
-        }
-
-        for (int freq : tf2.values()) {
-            magnitude2 += Math.pow(freq, 2);
-        }
-
-        if (magnitude1 == 0 || magnitude2 == 0) {
-            return 0.0;
-        }
-        //we calculate the cosine similarity
-        return dotProduct / (Math.sqrt(magnitude1) * Math.sqrt(magnitude2));
-    }
-
-    private static double calculateTextDistance(String text1, String text2) {
-        double similarity = calculateTextSimilarity(text1, text2);
-        return 1.0 - similarity;
+    // a single query for the k training reviews most like the text, which vote weighted by their score
+    private static String predictSentimentUsingKNN(String reviewText, KnnSentimentClassifier classifier) throws IOException {
+        return classifier.classify(reviewText);
     }
 
-
-    private static Map<String, Integer> computeTermFrequencies(String text) {
-        Map<String, Integer> termFreq = new HashMap<>();
-        for (String word : text.toLowerCase().split("\\s+")) {
-            termFreq.put(word, termFreq.getOrDefault(word, 0) + 1);
-        }
-        return termFreq;
-    }
-
-
-    private static String predictSentimentUsingNaiveBayes(String reviewText, List<Document> trainingDocs) {
-        Map<String, Integer> positiveWordCount = new HashMap<>();
-        Map<String, Integer> negativeWordCount = new HashMap<>();
-        int positiveDocCount = 0, negativeDocCount = 0;
-        int totalPositiveWords = 0, totalNegativeWords = 0;
-
+    // the word counts of the training reviews are gathered once, then every prediction only looks them up
+    private static NaiveBayesModel trainNaiveBayes(List<Document> trainingDocs) {
+        NaiveBayesModel.Trainer trainer = new NaiveBayesModel.Trainer();
         for (Document doc : trainingDocs) {
-            String sentiment = doc.get("sentiment");
-            String[] words = doc.get("reviewText").toLowerCase().split("\\s+");
-
-            if ("positive".equals(sentiment)) {
-                positiveDocCount++;
-                for (String word : words) {
-                    positiveWordCount.put(word, positiveWordCount.getOrDefault(word, 0) + 1);
-                    totalPositiveWords++;
-                }
-            } else if ("negative".equals(sentiment)) {
-                negativeDocCount++;
-                for (String word : words) {
-                    negativeWordCount.put(word, negativeWordCount.getOrDefault(word, 0) + 1);
-                    totalNegativeWords++;
-                }
+            String reviewText = doc.get("reviewText");
+            if (reviewText != null) {
+                trainer.add(sentimentOf(doc), reviewText);
             }
         }
+        return trainer.build();
+    }
 
-        double probPositive = (double) positiveDocCount / (positiveDocCount + negativeDocCount);
-        double probNegative = (double) negativeDocCount / (positiveDocCount + negativeDocCount);
-
-
-        // we seperate the words in the input
-        String[] reviewWords = reviewText.split("\\s+");
-
-        // calculating the probability for sentiment using Naive Bayes
-        double positiveProbability = Math.log(probPositive);
-        double negativeProbability = Math.log(probNegative);
-
-        // calculating the likelihood
-        for (String word : reviewWords) {
-            word = word.toLowerCase();
-
-            double wordProbPositive = (double) (positiveWordCount.getOrDefault(word, 0) + 1) / (totalPositiveWords + positiveWordCount.size());
-            positiveProbability += Math.log(wordProbPositive);
-
-            double wordProbNegative = (double) (negativeWordCount.getOrDefault(word, 0) + 1) / (totalNegativeWords + negativeWordCount.size());
-            negativeProbability += Math.log(wordProbNegative);
+    // the labelled sentiment of a review, or the one of its rating if it has none
+    private static String sentimentOf(Document doc) {
+        String sentiment = doc.get("sentiment");
+        if (sentiment != null) {
+            return sentiment;
         }
+        Number overall = doc.getField("overall").numericValue();
+        return NaiveBayesModel.sentimentOf(overall.doubleValue());
+    }
 
-        if (positiveProbability > negativeProbability) {
-            return "positive";
-        } else {
-            return "negative";
-        }
+    private static String predictSentimentUsingNaiveBayes(String reviewText, NaiveBayesModel model) {
+        return model.classify(reviewText);
     }
-}
\ No newline at end of file
+}
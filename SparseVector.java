@@ -0,0 +1,107 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The term frequencies of a text as a sparse vector: the ids of its terms in a
+ * {@link TermDictionary}, in increasing order, with their weights, and the L2 norm computed
+ * once when the vector is made. The dot product of two vectors is a merge of their sorted ids,
+ * so comparing two texts allocates nothing and never looks a term up again.
+ */
+public class SparseVector {
+
+    private final int[] ids;
+    private final float[] weights;
+    private final double norm;
+
+    private SparseVector(int[] ids, float[] weights, double norm) {
+        this.ids = ids;
+        this.weights = weights;
+        this.norm = norm;
+    }
+
+    /**
+     * Makes the vector of the lower-cased, whitespace-separated words of a text, each weighing
+     * its number of occurrences.
+     *
+     * @param terms the dictionary giving the ids of the words.
+     * @param text the text.
+     * @param addTerms true to give new words an id, false to leave words the dictionary does not
+     *                 know out of the vector; they still count in its norm, so cosines are the
+     *                 ones of the whole text.
+     * @return the vector.
+     */
+    public static SparseVector of(TermDictionary terms, String text, boolean addTerms) {
+        String[] words = text.toLowerCase().split("\\s+");
+        int[] wordIds = new int[words.length];
+        Map<String, Integer> unknownCounts = new HashMap<>();
+        for (int i = 0; i < words.length; i++) {
+            wordIds[i] = addTerms ? terms.add(words[i]) : terms.id(words[i]);
+            if (wordIds[i] < 0) {
+                unknownCounts.merge(words[i], 1, Integer::sum);
+            }
+        }
+        Arrays.sort(wordIds); // unknown words (-1) come first, then each id's occurrences side by side
+        int[] ids = new int[wordIds.length];
+        float[] weights = new float[wordIds.length];
+        int size = 0;
+        double squares = 0;
+        for (int count : unknownCounts.values()) {
+            squares += (double) count * count; // each distinct unknown word is a term of its own
+        }
+        for (int i = 0; i < wordIds.length; ) {
+            int id = wordIds[i];
+            int count = 1;
+            while (i + count < wordIds.length && wordIds[i + count] == id) {
+                count++;
+            }
+            if (id >= 0) {
+                ids[size] = id;
+                weights[size++] = count;
+                squares += (double) count * count;
+            }
+            i += count;
+        }
+        return new SparseVector(Arrays.copyOf(ids, size), Arrays.copyOf(weights, size), Math.sqrt(squares));
+    }
+
+    /**
+     * @param other another vector over the same dictionary.
+     * @return the dot product of the two vectors.
+     */
+    public double dot(SparseVector other) {
+        int[] otherIds = other.ids;
+        float[] otherWeights = other.weights;
+        double dot = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ids.length && j < otherIds.length) {
+            int a = ids[i];
+            int b = otherIds[j];
+            if (a == b) {
+                dot += weights[i++] * otherWeights[j++];
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return dot;
+    }
+
+    /**
+     * @param other another vector over the same dictionary.
+     * @return the cosine of the two vectors, 0 if either is empty.
+     */
+    public double cosine(SparseVector other) {
+        return norm == 0 || other.norm == 0 ? 0 : dot(other) / (norm * other.norm);
+    }
+
+    /** @return the number of distinct known terms. */
+    public int size() {return ids.length;}
+
+    /** @return the L2 norm, unknown terms included. */
+    public double getNorm() {return norm;}
+}
@@ -0,0 +1,89 @@
+package org.example;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Compares a text with every one of a fixed set of texts by the cosine of their term
+ * frequencies, the exact, brute-force answer to "which texts are most like this one".
+ * The texts become {@link SparseVector}s once; a query is one vector, scored against all of
+ * them in parallel chunks on the common fork-join pool, into an array the caller reuses.
+ */
+public class SparseVectorScorer {
+
+    // vectors scored per fork-join task, enough to outweigh the cost of a task
+    private static final int CHUNK = 1024;
+
+    private final TermDictionary terms = new TermDictionary();
+    private final SparseVector[] vectors;
+
+    /**
+     * @param texts the texts to compare queries with, each by its index in the list.
+     */
+    public SparseVectorScorer(List<String> texts) {
+        vectors = new SparseVector[texts.size()];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = SparseVector.of(terms, texts.get(i), true);
+        }
+    }
+
+    /**
+     * @param text a text to compare with the texts of the scorer.
+     * @return its vector over the words of those texts.
+     */
+    public SparseVector vector(String text) {
+        return SparseVector.of(terms, text, false);
+    }
+
+    /**
+     * Computes the cosine of a query with every text, in parallel.
+     *
+     * @param query the vector of the query, from {@link #vector(String)}.
+     * @param scores receives the cosine of text i at index i; at least {@link #size()} long.
+     */
+    public void scores(SparseVector query, float[] scores) {
+        if (scores.length < vectors.length) {
+            throw new IllegalArgumentException("scores must hold " + vectors.length + " values");
+        }
+        int chunks = (vectors.length + CHUNK - 1) / CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int end = Math.min(vectors.length, (chunk + 1) * CHUNK);
+            for (int i = chunk * CHUNK; i < end; i++) {
+                scores[i] = (float) query.cosine(vectors[i]);
+            }
+        });
+    }
+
+    /**
+     * Finds the texts most like a query.
+     *
+     * @param query the vector of the query, from {@link #vector(String)}.
+     * @param k the number of texts.
+     * @param scores scratch space for {@link #scores}, reused across queries.
+     * @return the indexes of up to k texts, highest cosine first, the lower index first among equal ones.
+     */
+    public int[] top(SparseVector query, int k, float[] scores) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        scores(query, scores);
+        int[] top = new int[Math.min(k, vectors.length)];
+        int size = 0;
+        for (int i = 0; i < vectors.length && top.length > 0; i++) {
+            // insertion into the short sorted list of the best so far
+            if (size == top.length && scores[i] <= scores[top[size - 1]]) {
+                continue;
+            }
+            int j = size == top.length ? size - 1 : size++;
+            while (j > 0 && scores[top[j - 1]] < scores[i]) {
+                top[j] = top[j - 1];
+                j--;
+            }
+            top[j] = i;
+        }
+        return top;
+    }
+
+    /** @return the number of texts. */
+    public int size() {return vectors.length;}
+}
@@ -0,0 +1,177 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reads reviews with Jackson's token stream instead of building a JsonNode tree per line.
+ * Lines come from a {@link ReviewLineReader} and are parsed from their raw bytes.
+ * Only the fields the Indexer uses are copied, into a {@link ReviewRecord} that is reused
+ * for every review; everything else is skipped without being materialized.
+ * Accepts both NDJSON (one review object per line) and one array of reviews per line,
+ * including a mix of the two in the same file.
+ */
+public class StreamingReviewParser {
+
+    private final JsonFactory factory = new JsonFactory();
+    private final ReviewRecord review = new ReviewRecord();
+
+    /**
+     * Callback receiving every parsed review. The record is reused after the call returns,
+     * so consumers that keep it must take a {@link ReviewRecord#copy()}.
+     */
+    @FunctionalInterface
+    public interface ReviewConsumer {
+        void accept(ReviewRecord review) throws IOException;
+    }
+
+    /**
+     * Parses every review of a file.
+     *
+     * @param reviewFile the JSON file containing reviews.
+     * @param consumer receives each review.
+     * @return the number of reviews parsed.
+     * @throws IOException if the file cannot be read or is not valid JSON.
+     */
+    public long parseFile(Path reviewFile, ReviewConsumer consumer) throws IOException {
+        try (ReviewLineReader reader = new ReviewLineReader(reviewFile, 0, 0)) {
+            return parseLines(reader, consumer);
+        }
+    }
+
+    /**
+     * Parses the remaining lines of a reader. The parser works directly on the line bytes,
+     * so no String is created for a line; the caller can ask the reader how far it got.
+     *
+     * @param reader the line reader, positioned where parsing should start.
+     * @param consumer receives each review.
+     * @return the number of reviews parsed.
+     * @throws IOException if the file cannot be read or a line is not valid JSON.
+     */
+    public long parseLines(ReviewLineReader reader, ReviewConsumer consumer) throws IOException {
+        long count = 0;
+        while (reader.next()) {
+            count += parseLine(reader.lineBytes(), reader.lineLength(), consumer);
+        }
+        return count;
+    }
+
+    /**
+     * Parses the reviews contained in a single line of input.
+     *
+     * @param line a JSON review object or an array of review objects.
+     * @param consumer receives each review.
+     * @return the number of reviews parsed.
+     * @throws IOException if the line is not valid JSON.
+     */
+    public long parseLine(String line, ReviewConsumer consumer) throws IOException {
+        try (JsonParser parser = factory.createParser(line)) {
+            return parseValues(parser, consumer);
+        }
+    }
+
+    /**
+     * Parses the reviews contained in a single line of UTF-8 input.
+     *
+     * @param line buffer holding a JSON review object or an array of review objects.
+     * @param length number of valid bytes in the buffer.
+     * @param consumer receives each review.
+     * @return the number of reviews parsed.
+     * @throws IOException if the line is not valid JSON.
+     */
+    public long parseLine(byte[] line, int length, ReviewConsumer consumer) throws IOException {
+        try (JsonParser parser = factory.createParser(line, 0, length)) {
+            return parseValues(parser, consumer);
+        }
+    }
+
+    private long parseValues(JsonParser parser, ReviewConsumer consumer) throws IOException {
+        long count = 0;
+        JsonToken token;
+        // the input is a sequence of root-level values, each an object or an array of objects
+        while ((token = parser.nextToken()) != null) {
+            if (token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    count += parseElement(parser, token, consumer);
+                }
+            } else {
+                count += parseElement(parser, token, consumer);
+            }
+        }
+        return count;
+    }
+
+    private int parseElement(JsonParser parser, JsonToken token, ReviewConsumer consumer) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return 0;
+        }
+        readReview(parser);
+        consumer.accept(review);
+        return 1;
+    }
+
+    private void readReview(JsonParser parser) throws IOException {
+        review.clear();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "reviewerID":
+                    review.reviewerID = textOf(parser, value);
+                    break;
+                case "asin":
+                    review.asin = textOf(parser, value);
+                    break;
+                case "reviewerName":
+                    review.reviewerName = textOf(parser, value);
+                    break;
+                case "reviewText":
+                    review.reviewText = textOf(parser, value);
+                    break;
+                case "overall":
+                    review.overall = doubleOf(parser, value);
+                    break;
+                case "summary":
+                    review.summary = textOf(parser, value);
+                    break;
+                case "cleanReviewTime":
+                    review.cleanReviewTime = textOf(parser, value);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    // same conversions as JsonNode.asText()/asDouble(), so both parsing paths index identical values
+    private static String textOf(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isStructStart()) {
+            parser.skipChildren();
+            return "";
+        }
+        return parser.getText();
+    }
+
+    private static double doubleOf(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isNumeric()) {
+            return parser.getDoubleValue();
+        }
+        if (value.isStructStart()) {
+            parser.skipChildren();
+            return 0.0;
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            try {
+                return Double.parseDouble(parser.getText().trim());
+            } catch (NumberFormatException e) {
+                return 0.0;
+            }
+        }
+        return value == JsonToken.VALUE_TRUE ? 1.0 : 0.0;
+    }
+}
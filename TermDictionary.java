@@ -0,0 +1,50 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps the terms of a corpus to dense int ids, 0 to {@link #size()} - 1, so per-term
+ * statistics can be kept in primitive arrays indexed by id instead of maps keyed by string.
+ */
+public class TermDictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> terms = new ArrayList<>();
+
+    /**
+     * Returns the id of a term, giving it the next id if it is new.
+     *
+     * @param term the term.
+     * @return its id.
+     */
+    public int add(String term) {
+        Integer id = ids.get(term);
+        if (id == null) {
+            id = terms.size();
+            ids.put(term, id);
+            terms.add(term);
+        }
+        return id;
+    }
+
+    /**
+     * @param term a term.
+     * @return its id, or -1 if the term is not in the dictionary.
+     */
+    public int id(String term) {
+        Integer id = ids.get(term);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id an id of the dictionary.
+     * @return the term with that id.
+     */
+    public String term(int id) {return terms.get(id);}
+
+    /** @return the number of terms. */
+    public int size() {return terms.size();}
+}